@@ -0,0 +1,60 @@
+package de.tjorven.benchmark;
+
+import de.tjorven.algorithm.AnalysisMode;
+import de.tjorven.algorithm.AnalysisOptions;
+import de.tjorven.algorithm.FolderAnalyser;
+import de.tjorven.algorithm.MetadataStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalyserBenchmark {
+
+    private static final int FILES = 100;
+
+    @Param({"MP3", "JPEG", "PDF", "DOCX"})
+    private CorpusGenerator.FileType fileType;
+
+    private Path corpus;
+    private List<Path> files;
+
+    @Setup
+    public void setup() throws IOException {
+        this.corpus = Files.createTempDirectory("file-sorter-corpus");
+        this.files = CorpusGenerator.generate(this.corpus, this.fileType, FILES, 42);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        CorpusGenerator.delete(this.corpus);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILES)
+    public MetadataStore metadataOnly() {
+        return this.analyse(AnalysisOptions.defaults());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILES)
+    public MetadataStore fullText() {
+        return this.analyse(AnalysisOptions.builder().mode(AnalysisMode.FULL_TEXT).build());
+    }
+
+    private MetadataStore analyse(AnalysisOptions options) {
+        // analyseFiles bypasses the metadata index, so every invocation really parses.
+        FolderAnalyser analyser = new FolderAnalyser(this.corpus, options);
+        analyser.analyseFiles(this.files);
+        return analyser.getStore();
+    }
+}
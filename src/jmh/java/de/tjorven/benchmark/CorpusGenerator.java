@@ -0,0 +1,256 @@
+package de.tjorven.benchmark;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public final class CorpusGenerator {
+
+    private static final String[] GENRES = {"Rock", "Pop", "Jazz", "Electronic", "Classical", "Hip-Hop", "Metal",
+            "Folk", "Blues", "Soundtrack"};
+    private static final String[] CAMERAS = {"Canon", "Nikon", "Sony", "Fujifilm", "Olympus", "Panasonic"};
+
+    // MPEG-1 Layer III, 128 kbit/s, 44.1 kHz, no padding: 417 bytes per frame.
+    private static final int MPEG_FRAME_HEADER = 0xFFFB9064;
+    private static final int MPEG_FRAME_LENGTH = 417;
+    private static final int MPEG_FRAMES = 40;
+
+    public enum FileType {
+        MP3(".mp3"),
+        JPEG(".jpg"),
+        PDF(".pdf"),
+        DOCX(".docx");
+
+        private final String extension;
+
+        FileType(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return this.extension;
+        }
+    }
+
+    private CorpusGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CorpusGenerator <directory> <files per type> [seed]");
+            System.exit(2);
+        }
+
+        Path directory = Paths.get(args[0]);
+        int count = Integer.parseInt(args[1]);
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+        for (FileType type : FileType.values()) {
+            List<Path> files = generate(directory, type, count, seed);
+            System.out.println("Generated " + files.size() + " " + type + " files in " + directory);
+        }
+    }
+
+    public static List<Path> generate(Path directory, FileType type, int count, long seed) throws IOException {
+        Files.createDirectories(directory);
+        Random random = new Random(seed ^ type.ordinal());
+        List<Path> files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Path file = directory.resolve(type.name().toLowerCase() + "-" + i + type.getExtension());
+            byte[] content = switch (type) {
+                case MP3 -> mp3(random, i);
+                case JPEG -> jpeg(random, i);
+                case PDF -> pdf(random, i);
+                case DOCX -> docx(random, i);
+            };
+            Files.write(file, content);
+            files.add(file);
+        }
+        return files;
+    }
+
+    public static void delete(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    static byte[] mp3(Random random, int index) throws IOException {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        id3Frame(frames, "TIT2", "Title " + index);
+        id3Frame(frames, "TPE1", "Artist " + random.nextInt(500));
+        id3Frame(frames, "TALB", "Album " + random.nextInt(2_000));
+        id3Frame(frames, "TCON", GENRES[random.nextInt(GENRES.length)]);
+        id3Frame(frames, "TYER", Integer.toString(1960 + random.nextInt(65)));
+        id3Frame(frames, "TRCK", Integer.toString(1 + random.nextInt(20)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[]{'I', 'D', '3', 3, 0, 0});
+        out.write(synchsafe(frames.size()));
+        frames.writeTo(out);
+
+        ByteBuffer audio = ByteBuffer.allocate(MPEG_FRAME_LENGTH * MPEG_FRAMES);
+        for (int i = 0; i < MPEG_FRAMES; i++) {
+            audio.putInt(i * MPEG_FRAME_LENGTH, MPEG_FRAME_HEADER);
+        }
+        out.write(audio.array());
+        return out.toByteArray();
+    }
+
+    static byte[] jpeg(Random random, int index) throws IOException {
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(new Color(random.nextInt(0xFFFFFF)));
+        graphics.fillRect(0, 0, 64, 48);
+        graphics.dispose();
+
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", encoded);
+        byte[] jpeg = encoded.toByteArray();
+
+        String make = CAMERAS[random.nextInt(CAMERAS.length)];
+        byte[] exif = exif(make, make + " Model " + random.nextInt(40),
+                String.format("%04d:%02d:%02d 12:00:%02d", 2000 + random.nextInt(25), 1 + random.nextInt(12),
+                        1 + random.nextInt(28), index % 60));
+
+        // The APP1 segment goes right after the SOI marker.
+        ByteArrayOutputStream out = new ByteArrayOutputStream(jpeg.length + exif.length + 4);
+        out.write(jpeg, 0, 2);
+        out.write(0xFF);
+        out.write(0xE1);
+        out.write((exif.length + 2) >> 8);
+        out.write((exif.length + 2) & 0xFF);
+        out.write(exif);
+        out.write(jpeg, 2, jpeg.length - 2);
+        return out.toByteArray();
+    }
+
+    static byte[] pdf(Random random, int index) {
+        String[] objects = {
+                "<< /Type /Catalog /Pages 2 0 R >>",
+                "<< /Type /Pages /Kids [3 0 R] /Count 1 >>",
+                "<< /Type /Page /Parent 2 0 R /MediaBox [0 0 612 792] >>",
+                "<< /Title (Report " + index + ") /Author (Author " + random.nextInt(200) + ") /Subject ("
+                        + GENRES[random.nextInt(GENRES.length)] + ") /CreationDate (D:" + (2000 + random.nextInt(25))
+                        + "0101120000Z) >>"
+        };
+
+        StringBuilder pdf = new StringBuilder("%PDF-1.4\n");
+        int[] offsets = new int[objects.length];
+        for (int i = 0; i < objects.length; i++) {
+            offsets[i] = pdf.length();
+            pdf.append(i + 1).append(" 0 obj\n").append(objects[i]).append("\nendobj\n");
+        }
+
+        int xref = pdf.length();
+        pdf.append("xref\n0 ").append(objects.length + 1).append('\n').append("0000000000 65535 f \n");
+        for (int offset : offsets) {
+            pdf.append(String.format("%010d 00000 n \n", offset));
+        }
+        pdf.append("trailer\n<< /Size ").append(objects.length + 1).append(" /Root 1 0 R /Info 4 0 R >>\n")
+                .append("startxref\n").append(xref).append("\n%%EOF\n");
+        return pdf.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    static byte[] docx(Random random, int index) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            zipEntry(zip, "[Content_Types].xml", """
+                    <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+                    <Types xmlns="http://schemas.openxmlformats.org/package/2006/content-types">
+                    <Default Extension="rels" ContentType="application/vnd.openxmlformats-package.relationships+xml"/>
+                    <Default Extension="xml" ContentType="application/xml"/>
+                    <Override PartName="/word/document.xml" ContentType="application/vnd.openxmlformats-officedocument.wordprocessingml.document.main+xml"/>
+                    <Override PartName="/docProps/core.xml" ContentType="application/vnd.openxmlformats-package.core-properties+xml"/>
+                    </Types>""");
+            zipEntry(zip, "_rels/.rels", """
+                    <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+                    <Relationships xmlns="http://schemas.openxmlformats.org/package/2006/relationships">
+                    <Relationship Id="rId1" Type="http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument" Target="word/document.xml"/>
+                    <Relationship Id="rId2" Type="http://schemas.openxmlformats.org/package/2006/relationships/metadata/core-properties" Target="docProps/core.xml"/>
+                    </Relationships>""");
+            zipEntry(zip, "word/document.xml", """
+                    <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+                    <w:document xmlns:w="http://schemas.openxmlformats.org/wordprocessingml/2006/main">
+                    <w:body><w:p><w:r><w:t>Document %d about %s.</w:t></w:r></w:p></w:body>
+                    </w:document>""".formatted(index, GENRES[random.nextInt(GENRES.length)]));
+            zipEntry(zip, "docProps/core.xml", """
+                    <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+                    <cp:coreProperties xmlns:cp="http://schemas.openxmlformats.org/package/2006/metadata/core-properties"
+                     xmlns:dc="http://purl.org/dc/elements/1.1/" xmlns:dcterms="http://purl.org/dc/terms/"
+                     xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance">
+                    <dc:title>Document %d</dc:title>
+                    <dc:creator>Author %d</dc:creator>
+                    <dcterms:created xsi:type="dcterms:W3CDTF">%d-01-01T12:00:00Z</dcterms:created>
+                    </cp:coreProperties>""".formatted(index, random.nextInt(200), 2000 + random.nextInt(25)));
+        }
+        return out.toByteArray();
+    }
+
+    private static void id3Frame(ByteArrayOutputStream out, String id, String text) throws IOException {
+        byte[] value = text.getBytes(StandardCharsets.ISO_8859_1);
+        out.write(id.getBytes(StandardCharsets.ISO_8859_1));
+        out.write(ByteBuffer.allocate(4).putInt(value.length + 1).array());
+        out.write(new byte[]{0, 0, 0});
+        out.write(value);
+    }
+
+    private static byte[] synchsafe(int size) {
+        return new byte[]{(byte) ((size >> 21) & 0x7F), (byte) ((size >> 14) & 0x7F), (byte) ((size >> 7) & 0x7F), (byte) (size & 0x7F)};
+    }
+
+    private static byte[] exif(String make, String model, String dateTime) {
+        String[] values = {make, model, dateTime};
+        int[] tags = {0x010F, 0x0110, 0x0132};
+
+        int ifdSize = 2 + tags.length * 12 + 4;
+        int dataSize = 0;
+        for (String value : values) {
+            dataSize += value.length() + 1;
+        }
+
+        ByteBuffer tiff = ByteBuffer.allocate(8 + ifdSize + dataSize);
+        tiff.put(new byte[]{'M', 'M', 0, 42}).putInt(8);
+        tiff.putShort((short) tags.length);
+
+        int dataOffset = 8 + ifdSize;
+        for (int i = 0; i < tags.length; i++) {
+            byte[] ascii = (values[i] + '\0').getBytes(StandardCharsets.US_ASCII);
+            tiff.putShort((short) tags[i]).putShort((short) 2).putInt(ascii.length).putInt(dataOffset);
+            tiff.put(dataOffset, ascii);
+            dataOffset += ascii.length;
+        }
+        tiff.putInt(0);
+
+        byte[] header = {'E', 'x', 'i', 'f', 0, 0};
+        byte[] segment = new byte[header.length + tiff.capacity()];
+        System.arraycopy(header, 0, segment, 0, header.length);
+        System.arraycopy(tiff.array(), 0, segment, header.length, tiff.capacity());
+        return segment;
+    }
+
+    private static void zipEntry(ZipOutputStream zip, String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+}
@@ -0,0 +1,77 @@
+package de.tjorven.benchmark;
+
+import de.tjorven.algorithm.FolderAnalyser;
+import de.tjorven.algorithm.ConflictPolicy;
+import de.tjorven.algorithm.MetadataStore;
+import de.tjorven.algorithm.SortPlan;
+import de.tjorven.preview.PreviewTreeModel;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class GroupingBenchmark {
+
+    private static final List<String> LEVELS = List.of("xmpDM:genre", "xmpDM:artist", "xmpDM:album");
+    private static final Path ROOT = Paths.get("grouping-benchmark-root");
+
+    @Param({"10000", "100000"})
+    private int fileCount;
+
+    private FolderAnalyser analyser;
+    private MetadataStore store;
+
+    @Setup
+    public void setup() {
+        this.analyser = new FolderAnalyser(Paths.get("."));
+        this.store = this.analyser.getStore();
+        Random random = new Random(42);
+        for (int i = 0; i < this.fileCount; i++) {
+            this.store.put(SyntheticMetadata.fileName(i), SyntheticMetadata.file(random, i));
+        }
+    }
+
+    @Benchmark
+    public List<Map.Entry<String, Integer>> findSimilarities() {
+        return this.analyser.findSimilarities();
+    }
+
+    @Benchmark
+    public SortPlan compilePlan() {
+        return SortPlan.compile(ROOT, this.store, LEVELS, this.store.allFiles(), ConflictPolicy.RENAME);
+    }
+
+    @Benchmark
+    public int previewFullyExpanded() {
+        PreviewTreeModel.Scope scope = new PreviewTreeModel.Scope(ROOT, ROOT, this.store, ConflictPolicy.RENAME);
+        PreviewTreeModel model = PreviewTreeModel.direct("root", scope, LEVELS, this.store.allFiles());
+        return expandFolders(model, model.getRoot());
+    }
+
+    private static int expandFolders(PreviewTreeModel model, Object node) {
+        if (model.isLeaf(node)) {
+            return 0;
+        }
+
+        int childCount = model.getChildCount(node);
+        int folders = 1;
+        for (int i = 0; i < childCount; i++) {
+            Object child = model.getChild(node, i);
+            if (model.isLeaf(child)) {
+                break;
+            }
+            folders += expandFolders(model, child);
+        }
+        return folders;
+    }
+}
@@ -0,0 +1,44 @@
+package de.tjorven.benchmark;
+
+import de.tjorven.algorithm.MetadataStore;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public final class MetadataFootprint {
+
+    private MetadataFootprint() {
+    }
+
+    public static void main(String[] args) {
+        int fileCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        long baseline = usedHeap();
+        Map<String, Map<String, String>> nested = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < fileCount; i++) {
+            nested.put(SyntheticMetadata.fileName(i), SyntheticMetadata.file(random, i));
+        }
+        long nestedBytes = usedHeap() - baseline;
+        System.out.printf("nested maps:    %,d files, %,d bytes retained (%d)%n", fileCount, nestedBytes, nested.size());
+        nested = null;
+
+        baseline = usedHeap();
+        MetadataStore store = new MetadataStore();
+        random = new Random(42);
+        for (int i = 0; i < fileCount; i++) {
+            store.put(SyntheticMetadata.fileName(i), SyntheticMetadata.file(random, i));
+        }
+        long storeBytes = usedHeap() - baseline;
+        System.out.printf("metadata store: %,d files, %,d bytes retained (%d)%n", fileCount, storeBytes, store.size());
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
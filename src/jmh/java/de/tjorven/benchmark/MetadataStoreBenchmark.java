@@ -0,0 +1,52 @@
+package de.tjorven.benchmark;
+
+import de.tjorven.algorithm.MetadataStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class MetadataStoreBenchmark {
+
+    @Param({"10000", "100000"})
+    private int fileCount;
+
+    private List<Map<String, String>> files;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        this.files = new ArrayList<>(this.fileCount);
+        for (int i = 0; i < this.fileCount; i++) {
+            this.files.add(SyntheticMetadata.file(random, i));
+        }
+    }
+
+    @Benchmark
+    public Map<String, Map<String, String>> buildNestedMaps() {
+        Map<String, Map<String, String>> metadata = new HashMap<>();
+        for (int i = 0; i < this.fileCount; i++) {
+            metadata.put(SyntheticMetadata.fileName(i), new HashMap<>(this.files.get(i)));
+        }
+        return metadata;
+    }
+
+    @Benchmark
+    public MetadataStore buildStore() {
+        MetadataStore store = new MetadataStore();
+        for (int i = 0; i < this.fileCount; i++) {
+            store.put(SyntheticMetadata.fileName(i), this.files.get(i));
+        }
+        return store;
+    }
+}
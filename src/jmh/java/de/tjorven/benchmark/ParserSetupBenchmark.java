@@ -0,0 +1,52 @@
+package de.tjorven.benchmark;
+
+import de.tjorven.algorithm.TikaParserPool;
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserSetupBenchmark {
+
+    private byte[] document;
+
+    @Setup
+    public void setup() {
+        this.document = """
+                <html><head><title>Benchmark</title><meta name="author" content="File-Sorter"></head>
+                <body><p>A small document, so that parser setup dominates the per-file cost.</p></body></html>
+                """.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Metadata freshConfigPerFile() throws Exception {
+        TikaConfig config = new TikaConfig(this.getClass().getClassLoader());
+        AutoDetectParser parser = new AutoDetectParser(config);
+        return this.parse(parser);
+    }
+
+    @Benchmark
+    public Metadata pooledParser() throws Exception {
+        return this.parse(TikaParserPool.parser());
+    }
+
+    private Metadata parse(AutoDetectParser parser) throws Exception {
+        Metadata metadata = new Metadata();
+        try (InputStream is = new ByteArrayInputStream(this.document)) {
+            parser.parse(is, new BodyContentHandler(-1), metadata);
+        }
+        return metadata;
+    }
+}
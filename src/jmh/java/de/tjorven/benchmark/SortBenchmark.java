@@ -0,0 +1,90 @@
+package de.tjorven.benchmark;
+
+import de.tjorven.algorithm.MetadataStore;
+import de.tjorven.algorithm.MoveStats;
+import de.tjorven.algorithm.RecursiveSorter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SortBenchmark {
+
+    private static final List<String> LEVELS = List.of("xmpDM:genre", "xmpDM:artist");
+    private static final List<String> EXTENSIONS = List.of(".mp3");
+
+    @State(Scope.Benchmark)
+    public static class Tree {
+
+        @Param({"1000", "10000"})
+        private int fileCount;
+
+        private Path home;
+        private Path root;
+        RecursiveSorter sorter;
+
+        @Setup(Level.Trial)
+        public void createTree() throws IOException {
+            // Journals are written below user.home, which must point somewhere disposable before SortJournal is loaded.
+            this.home = Files.createTempDirectory("file-sorter-home");
+            System.setProperty("user.home", this.home.toString());
+
+            this.root = Files.createTempDirectory("file-sorter-tree");
+            MetadataStore store = new MetadataStore();
+            Random random = new Random(42);
+            for (int i = 0; i < this.fileCount; i++) {
+                String fileName = SyntheticMetadata.fileName(i);
+                Files.createFile(this.root.resolve(fileName));
+                store.put(fileName, SyntheticMetadata.file(random, i));
+            }
+            this.sorter = new RecursiveSorter(this.root.toString(), store);
+        }
+
+        @TearDown(Level.Trial)
+        public void deleteTree() throws IOException {
+            CorpusGenerator.delete(this.root);
+            CorpusGenerator.delete(this.home);
+        }
+
+        MoveStats sort() throws IOException {
+            return this.sorter.runFilter(this.root, LEVELS, EXTENSIONS);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class UnsortedTree extends Tree {
+
+        @TearDown(Level.Invocation)
+        public void revert() throws IOException {
+            this.sorter.revertSort();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SortedTree extends Tree {
+
+        @Setup(Level.Invocation)
+        public void sortTree() throws IOException {
+            this.sort();
+        }
+    }
+
+    @Benchmark
+    public MoveStats runFilter(UnsortedTree tree) throws IOException {
+        return tree.sort();
+    }
+
+    @Benchmark
+    public MoveStats revertSort(SortedTree tree) throws IOException {
+        return tree.sorter.revertSort();
+    }
+}
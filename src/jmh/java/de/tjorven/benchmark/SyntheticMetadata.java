@@ -0,0 +1,41 @@
+package de.tjorven.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public final class SyntheticMetadata {
+
+    private static final String[] CONTENT_TYPES = {"audio/mpeg", "image/jpeg", "application/pdf", "audio/flac",
+            "application/vnd.openxmlformats-officedocument.wordprocessingml.document"};
+    private static final String[] GENRES = {"Rock", "Pop", "Jazz", "Electronic", "Classical", "Hip-Hop", "Metal",
+            "Folk", "Blues", "Soundtrack"};
+
+    private SyntheticMetadata() {
+    }
+
+    public static Map<String, String> file(Random random, int index) {
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("Content-Type", CONTENT_TYPES[random.nextInt(CONTENT_TYPES.length)]);
+        metadata.put("X-TIKA:Parsed-By", "org.apache.tika.parser.DefaultParser");
+        metadata.put("dc:title", "Title " + index);
+        metadata.put("xmpDM:artist", "Artist " + random.nextInt(500));
+        metadata.put("xmpDM:album", "Album " + random.nextInt(2_000));
+        metadata.put("xmpDM:genre", GENRES[random.nextInt(GENRES.length)]);
+        metadata.put("xmpDM:releaseDate", Integer.toString(1960 + random.nextInt(65)));
+        metadata.put("xmpDM:trackNumber", Integer.toString(1 + random.nextInt(20)));
+        metadata.put("xmpDM:audioSampleRate", random.nextBoolean() ? "44100" : "48000");
+        metadata.put("xmpDM:audioChannelType", "Stereo");
+        metadata.put("channels", "2");
+        metadata.put("version", "MPEG 3 Layer III Version 1");
+        if (random.nextInt(4) == 0) {
+            metadata.put("tiff:Make", "Camera " + random.nextInt(30));
+            metadata.put("tiff:Model", "Model " + random.nextInt(120));
+        }
+        return metadata;
+    }
+
+    public static String fileName(int index) {
+        return "file-" + index + ".mp3";
+    }
+}
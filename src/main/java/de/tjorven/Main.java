@@ -0,0 +1,18 @@
+package de.tjorven;
+
+import de.tjorven.cli.FileSorterCli;
+
+public final class Main {
+
+    private Main() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            MetadataListUI.main(args);
+            return;
+        }
+
+        System.exit(FileSorterCli.run(args));
+    }
+}
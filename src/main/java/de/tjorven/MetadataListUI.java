@@ -2,6 +2,7 @@ package de.tjorven;
 
 import com.formdev.flatlaf.FlatDarculaLaf;
 import com.formdev.flatlaf.intellijthemes.materialthemeuilite.FlatMTMaterialDeepOceanIJTheme;
+import de.tjorven.algorithm.TikaParserPool;
 import de.tjorven.page.HomePage;
 import de.tjorven.panels.PageablePanel;
 import lombok.Getter;
@@ -26,6 +27,8 @@ public class MetadataListUI extends JFrame {
     }
 
     private static void initApp() {
+        // Tika takes a few seconds to load its parsers; that can happen while the user is still choosing a folder.
+        TikaParserPool.prewarm();
         FlatDarculaLaf.setup();
 
         try {
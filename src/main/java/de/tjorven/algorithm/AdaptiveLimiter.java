@@ -0,0 +1,125 @@
+package de.tjorven.algorithm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// A semaphore that resizes itself from what it measures. While every permit is in use and throughput holds up
+// without latency running away, it grows by one per window. Once latency rises without buying any throughput,
+// the extra concurrency is only queueing or seeking, and it shrinks multiplicatively.
+public class AdaptiveLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveLimiter.class);
+
+    private static final long WINDOW_NANOS = 250_000_000L;
+    private static final int MIN_SAMPLES = 8;
+    private static final double BACKOFF = 0.75;
+    private static final double THROUGHPUT_TOLERANCE = 0.05;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    // Both baselines drift, so a change in workload, like larger files, is not judged against a stale best case.
+    private static final double THROUGHPUT_DECAY = 0.98;
+    private static final double LATENCY_DRIFT = 1.02;
+
+    private final String name;
+    private final StageLimits limits;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = this.lock.newCondition();
+
+    private volatile int limit;
+    private int inFlight;
+    private int peakInFlight;
+    private long windowStart = System.nanoTime();
+    private int windowSamples;
+    private long windowLatencyNanos;
+    private double bestThroughput;
+    private double baselineLatency = Double.MAX_VALUE;
+
+    public AdaptiveLimiter(String name, StageLimits limits) {
+        this.name = name;
+        this.limits = limits;
+        this.limit = limits.initial();
+    }
+
+    public Permit acquire() throws InterruptedException {
+        this.lock.lockInterruptibly();
+        try {
+            while (this.inFlight >= this.limit) {
+                this.available.await();
+            }
+            this.inFlight++;
+            this.peakInFlight = Math.max(this.peakInFlight, this.inFlight);
+        } finally {
+            this.lock.unlock();
+        }
+        return new Permit();
+    }
+
+    public int getLimit() {
+        return this.limit;
+    }
+
+    public StageLimits getLimits() {
+        return this.limits;
+    }
+
+    private void release(long startNanos) {
+        long now = System.nanoTime();
+        this.lock.lock();
+        try {
+            this.inFlight--;
+            this.windowSamples++;
+            this.windowLatencyNanos += now - startNanos;
+            if (!this.limits.isFixed() && this.windowSamples >= MIN_SAMPLES && now - this.windowStart >= WINDOW_NANOS) {
+                this.adjust(now);
+            }
+            this.available.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void adjust(long now) {
+        double throughput = this.windowSamples * 1e9 / (now - this.windowStart);
+        double latency = (double) this.windowLatencyNanos / this.windowSamples;
+        boolean saturated = this.peakInFlight >= this.limit;
+        // Latency under full load includes queueing, so the baseline only relaxes when there is none, or no less to try.
+        if (latency < this.baselineLatency || !saturated || this.limit == this.limits.min()) {
+            this.baselineLatency = Math.min(latency, this.baselineLatency * LATENCY_DRIFT);
+        }
+        boolean latencyHealthy = latency <= this.baselineLatency * LATENCY_TOLERANCE;
+        boolean throughputImproved = throughput > this.bestThroughput * (1 + THROUGHPUT_TOLERANCE);
+        boolean throughputHeld = throughput >= this.bestThroughput * (1 - THROUGHPUT_TOLERANCE);
+
+        int previous = this.limit;
+        if (!latencyHealthy && !throughputImproved) {
+            this.limit = Math.max(this.limits.min(), (int) (this.limit * BACKOFF));
+        } else if (saturated && throughputHeld) {
+            this.limit = Math.min(this.limits.max(), this.limit + 1);
+        }
+        if (this.limit != previous) {
+            logger.debug("{} concurrency {} -> {} ({} ops/s, {} ms average)", this.name, previous, this.limit,
+                    String.format("%.0f", throughput), String.format("%.2f", latency / 1e6));
+        }
+
+        this.bestThroughput = Math.max(throughput, this.bestThroughput * THROUGHPUT_DECAY);
+        this.windowStart = now;
+        this.windowSamples = 0;
+        this.windowLatencyNanos = 0;
+        this.peakInFlight = this.inFlight;
+    }
+
+    public final class Permit implements AutoCloseable {
+
+        private final long startNanos = System.nanoTime();
+
+        private Permit() {
+        }
+
+        @Override
+        public void close() {
+            AdaptiveLimiter.this.release(this.startNanos);
+        }
+    }
+}
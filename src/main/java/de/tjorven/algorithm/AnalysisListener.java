@@ -0,0 +1,15 @@
+package de.tjorven.algorithm;
+
+import java.util.Map;
+
+public interface AnalysisListener {
+
+    AnalysisListener NONE = new AnalysisListener() {
+    };
+
+    default void onResult(String fileKey, Map<String, String> metadata) {
+    }
+
+    default void onProgress(AnalysisProgress progress) {
+    }
+}
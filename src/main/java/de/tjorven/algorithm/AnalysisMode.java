@@ -0,0 +1,71 @@
+package de.tjorven.algorithm;
+
+import org.apache.tika.extractor.EmbeddedDocumentExtractor;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.ocr.TesseractOCRConfig;
+import org.apache.tika.parser.pdf.PDFParserConfig;
+import org.apache.tika.sax.BodyContentHandler;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.InputStream;
+
+public enum AnalysisMode {
+
+    METADATA_ONLY {
+        @Override
+        public ContentHandler createHandler() {
+            return new DefaultHandler();
+        }
+
+        @Override
+        public ParseContext createContext() {
+            PDFParserConfig pdfConfig = new PDFParserConfig();
+            pdfConfig.setOcrStrategy(PDFParserConfig.OCR_STRATEGY.NO_OCR);
+            pdfConfig.setExtractInlineImages(false);
+            pdfConfig.setExtractAnnotationText(false);
+            pdfConfig.setExtractBookmarksText(false);
+            pdfConfig.setExtractAcroFormContent(false);
+            pdfConfig.setExtractMarkedContent(false);
+            pdfConfig.setExtractActions(false);
+
+            TesseractOCRConfig ocrConfig = new TesseractOCRConfig();
+            ocrConfig.setSkipOcr(true);
+
+            ParseContext context = new ParseContext();
+            context.set(PDFParserConfig.class, pdfConfig);
+            context.set(TesseractOCRConfig.class, ocrConfig);
+            context.set(EmbeddedDocumentExtractor.class, new SkipEmbeddedDocuments());
+            return context;
+        }
+    },
+
+    FULL_TEXT {
+        @Override
+        public ContentHandler createHandler() {
+            return new BodyContentHandler(-1);
+        }
+
+        @Override
+        public ParseContext createContext() {
+            return new ParseContext();
+        }
+    };
+
+    public abstract ContentHandler createHandler();
+
+    public abstract ParseContext createContext();
+
+    private static final class SkipEmbeddedDocuments implements EmbeddedDocumentExtractor {
+
+        @Override
+        public boolean shouldParseEmbedded(Metadata metadata) {
+            return false;
+        }
+
+        @Override
+        public void parseEmbedded(InputStream stream, ContentHandler handler, Metadata metadata, boolean outputHtml) {
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package de.tjorven.algorithm;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@Builder(toBuilder = true)
+public class AnalysisOptions {
+
+    @Builder.Default
+    private final AnalysisMode mode = AnalysisMode.METADATA_ONLY;
+    @Builder.Default
+    private final WalkOptions walkOptions = WalkOptions.defaults();
+    @Builder.Default
+    private final ParseLimits limits = ParseLimits.defaults();
+    @Builder.Default
+    private final List<String> requiredAttributes = List.of();
+    @Builder.Default
+    private final List<String> extensions = List.of();
+    @Builder.Default
+    private final boolean headerFastPath = true;
+    @Builder.Default
+    private final boolean detectDuplicates = false;
+    @Builder.Default
+    private final StorageProfile storage = StorageProfile.SSD;
+    private final StageLimits readStage;
+    private final StageLimits parseStage;
+    @Builder.Default
+    private final boolean collectMetrics = false;
+    // Worker processes that parse in shards; 0 parses in this process.
+    @Builder.Default
+    private final int workers = 0;
+    @Builder.Default
+    private final int workerHeapMegabytes = 512;
+
+    public static AnalysisOptions defaults() {
+        return AnalysisOptions.builder().build();
+    }
+
+    public static int defaultWorkers() {
+        return Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+    }
+
+    public StageLimits getEffectiveReadStage() {
+        return this.readStage != null ? this.readStage : this.storage.getRead();
+    }
+
+    public StageLimits getEffectiveParseStage() {
+        return this.parseStage != null ? this.parseStage : this.storage.getParse();
+    }
+}
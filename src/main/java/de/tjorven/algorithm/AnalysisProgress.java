@@ -0,0 +1,8 @@
+package de.tjorven.algorithm;
+
+import java.time.Duration;
+
+public record AnalysisProgress(long filesDiscovered, long filesDone, long bytesDiscovered, long bytesDone,
+                               double filesPerSecond, double bytesPerSecond, Duration eta, String currentFile,
+                               Duration firstFileAfter, Duration firstFileSinceLaunch, boolean finished) {
+}
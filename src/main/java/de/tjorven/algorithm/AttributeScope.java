@@ -0,0 +1,74 @@
+package de.tjorven.algorithm;
+
+import org.apache.tika.mime.MediaType;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+final class AttributeScope {
+
+    private static final Predicate<MediaType> AUDIO_VIDEO = type -> type.getType().equals("audio") || type.getType().equals("video");
+    private static final Predicate<MediaType> IMAGE_VIDEO = type -> type.getType().equals("image") || type.getType().equals("video");
+
+    // Namespaces that only a few parsers ever write. Anything not listed here (dc:, dcterms:, meta:, plain keys)
+    // can come from any type, so files are only skipped when every requested attribute rules them out.
+    private static final Map<String, Predicate<MediaType>> NAMESPACES = Map.of(
+            "xmpDM", AUDIO_VIDEO,
+            "tiff", IMAGE_VIDEO,
+            "exif", IMAGE_VIDEO,
+            "pdf", type -> type.getSubtype().equals("pdf"),
+            "xmpTPg", type -> type.getType().equals("application")
+    );
+
+    private final List<String> attributes;
+    private final List<String> extensions;
+    private final String signature;
+
+    AttributeScope(List<String> attributes, List<String> extensions) {
+        this.attributes = List.copyOf(attributes);
+        this.extensions = List.copyOf(extensions);
+        this.signature = String.join(",", new TreeSet<>(attributes));
+    }
+
+    boolean isSelective() {
+        return !this.attributes.isEmpty();
+    }
+
+    List<String> attributes() {
+        return this.attributes;
+    }
+
+    String signature() {
+        return this.signature;
+    }
+
+    boolean includes(Path file) {
+        return RecursiveSorter.hasAllowedExtension(file, this.extensions);
+    }
+
+    boolean canYield(MediaType type) {
+        if (!this.isSelective() || type == null) {
+            return true;
+        }
+        for (String attribute : this.attributes) {
+            int separator = attribute.indexOf(':');
+            Predicate<MediaType> supported = separator > 0 ? NAMESPACES.get(attribute.substring(0, separator)) : null;
+            if (supported == null || supported.test(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // An entry parsed for a narrower scope is only good enough if it was looking for everything we need now.
+    boolean isCoveredBy(String entrySignature) {
+        if (!this.isSelective()) {
+            return false;
+        }
+        List<String> covered = List.of(entrySignature.split(","));
+        return covered.containsAll(this.attributes);
+    }
+}
@@ -0,0 +1,18 @@
+package de.tjorven.algorithm;
+
+public enum ConflictPolicy {
+
+    RENAME("Keep both (add a number)"),
+    SKIP("Leave the file where it is"),
+    OVERWRITE("Overwrite the existing file");
+
+    private final String description;
+
+    ConflictPolicy(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return this.description;
+    }
+}
@@ -0,0 +1,58 @@
+package de.tjorven.algorithm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+final class ContentDigest {
+
+    private static final String ALGORITHM = "SHA-256";
+    private static final int SKIP_BUFFER_SIZE = 8192;
+
+    private ContentDigest() {
+    }
+
+    static DigestInputStream wrap(InputStream in) {
+        return new SkipThroughDigestInputStream(in, newDigest());
+    }
+
+    // Reads whatever the parser left unread, so the digest always covers the whole file.
+    static String finish(DigestInputStream in) throws IOException {
+        in.transferTo(OutputStream.nullOutputStream());
+        return HexFormat.of().formatHex(in.getMessageDigest().digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ALGORITHM + " is required by every Java runtime", e);
+        }
+    }
+
+    // Parsers skip over audio frames and image data, but those bytes are part of the content all the same.
+    private static final class SkipThroughDigestInputStream extends DigestInputStream {
+
+        private SkipThroughDigestInputStream(InputStream in, MessageDigest digest) {
+            super(in, digest);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(SKIP_BUFFER_SIZE, Math.max(0, n))];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = this.read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (read < 0) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package de.tjorven.algorithm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class DirectoryWalker {
+
+    private static final Logger logger = LoggerFactory.getLogger(DirectoryWalker.class);
+
+    private final Path root;
+    private final WalkOptions options;
+    private final List<PathMatcher> includes;
+    private final List<PathMatcher> excludes;
+
+    private volatile ForkJoinPool pool;
+    private volatile boolean cancelled;
+
+    public DirectoryWalker(Path root, WalkOptions options) {
+        this.root = root;
+        this.options = options;
+        this.includes = compile(options.getIncludes());
+        this.excludes = compile(options.getExcludes());
+    }
+
+    public void walk(FileVisitor visitor) throws IOException {
+        this.walk((file, attributes) -> {
+        }, visitor);
+    }
+
+    public void walk(FileVisitor discovery, FileVisitor visitor) throws IOException {
+        if (!Files.isDirectory(this.root)) {
+            throw new NotDirectoryException(this.root.toString());
+        }
+
+        this.pool = new ForkJoinPool(Math.max(1, this.options.getParallelism()));
+        try {
+            if (!this.cancelled) {
+                this.pool.invoke(new DirectoryTask(this.root, 0, discovery, visitor));
+            }
+        } catch (CancellationException e) {
+            if (!this.cancelled) {
+                throw e;
+            }
+        } finally {
+            this.pool.shutdown();
+        }
+    }
+
+    public void cancel() {
+        this.cancelled = true;
+        ForkJoinPool current = this.pool;
+        if (current != null) {
+            current.shutdownNow();
+        }
+    }
+
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    public List<Path> collect() throws IOException {
+        ConcurrentLinkedQueue<Path> files = new ConcurrentLinkedQueue<>();
+        this.walk((file, attributes) -> files.add(file));
+        return new ArrayList<>(files);
+    }
+
+    public String relativeKey(Path file) {
+        return this.root.relativize(file).toString();
+    }
+
+    private boolean isIncluded(Path relative) {
+        if (this.matchesAny(this.excludes, relative)) {
+            return false;
+        }
+        return this.includes.isEmpty() || this.matchesAny(this.includes, relative);
+    }
+
+    private boolean matchesAny(List<PathMatcher> matchers, Path relative) {
+        Path fileName = relative.getFileName();
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(relative) || (fileName != null && matcher.matches(fileName))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<PathMatcher> compile(List<String> globs) {
+        FileSystem fileSystem = FileSystems.getDefault();
+        return globs.stream()
+                .filter(glob -> !glob.isBlank())
+                .map(glob -> fileSystem.getPathMatcher("glob:" + glob.trim()))
+                .toList();
+    }
+
+    private static BasicFileAttributes readAttributes(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            if (attributes.isSymbolicLink()) {
+                attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                return attributes.isRegularFile() ? attributes : null;
+            }
+            return attributes;
+        } catch (IOException e) {
+            logger.error("Could not read attributes: {}", path, e);
+            return null;
+        }
+    }
+
+    @FunctionalInterface
+    public interface FileVisitor {
+        void visit(Path file, BasicFileAttributes attributes);
+    }
+
+    private class DirectoryTask extends RecursiveAction {
+
+        private final Path directory;
+        private final int depth;
+        private final FileVisitor discovery;
+        private final FileVisitor visitor;
+
+        private DirectoryTask(Path directory, int depth, FileVisitor discovery, FileVisitor visitor) {
+            this.directory = directory;
+            this.depth = depth;
+            this.discovery = discovery;
+            this.visitor = visitor;
+        }
+
+        @Override
+        protected void compute() {
+            if (DirectoryWalker.this.cancelled) {
+                return;
+            }
+
+            List<RecursiveAction> tasks = new ArrayList<>();
+            int childDepth = this.depth + 1;
+
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory)) {
+                for (Path child : stream) {
+                    if (DirectoryWalker.this.cancelled) {
+                        break;
+                    }
+
+                    BasicFileAttributes attributes = readAttributes(child);
+                    if (attributes == null) {
+                        continue;
+                    }
+
+                    Path relative = DirectoryWalker.this.root.relativize(child);
+                    if (attributes.isDirectory()) {
+                        if (childDepth < DirectoryWalker.this.options.getEffectiveMaxDepth()
+                                && !DirectoryWalker.this.matchesAny(DirectoryWalker.this.excludes, relative)) {
+                            tasks.add(new DirectoryTask(child, childDepth, this.discovery, this.visitor));
+                        }
+                    } else if (attributes.isRegularFile() && DirectoryWalker.this.isIncluded(relative)) {
+                        this.discovery.visit(child, attributes);
+                        RecursiveAction fileTask = new RecursiveAction() {
+                            @Override
+                            protected void compute() {
+                                if (!DirectoryWalker.this.cancelled) {
+                                    DirectoryTask.this.visitor.visit(child, attributes);
+                                }
+                            }
+                        };
+                        fileTask.fork();
+                        tasks.add(fileTask);
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                logger.error("Could not list directory: {}", this.directory, e);
+            }
+
+            for (RecursiveAction task : tasks) {
+                if (task instanceof DirectoryTask) {
+                    task.fork();
+                }
+            }
+            for (RecursiveAction task : tasks) {
+                task.join();
+            }
+        }
+    }
+}
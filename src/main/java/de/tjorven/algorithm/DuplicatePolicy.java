@@ -0,0 +1,19 @@
+package de.tjorven.algorithm;
+
+public enum DuplicatePolicy {
+
+    KEEP("Sort them like any other file"),
+    SKIP("Leave copies where they are"),
+    LINK("Replace copies with hard links"),
+    FOLDER("Move copies to a Duplicates folder");
+
+    private final String description;
+
+    DuplicatePolicy(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return this.description;
+    }
+}
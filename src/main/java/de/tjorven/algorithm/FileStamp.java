@@ -0,0 +1,6 @@
+package de.tjorven.algorithm;
+
+import java.nio.file.Path;
+
+record FileStamp(String fileKey, Path file, long size, long lastModified) {
+}
@@ -0,0 +1,83 @@
+package de.tjorven.algorithm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.CRC32C;
+
+// Copies a file to another volume and only then removes the source. The copy is written next to the
+// target under a hidden name, so an interrupted transfer never leaves a half-written file under the real name.
+final class FileTransfer {
+
+    private static final String PARTIAL_SUFFIX = ".part";
+    private static final int CHECKSUM_BUFFER_SIZE = 1 << 20;
+
+    private FileTransfer() {
+    }
+
+    static long transfer(Path source, Path target, boolean replaceExisting, boolean verify) throws IOException {
+        if (!replaceExisting && Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+            throw new FileAlreadyExistsException(target.toString());
+        }
+
+        Path partial = target.resolveSibling("." + target.getFileName() + PARTIAL_SUFFIX);
+        FileTime lastModified = Files.getLastModifiedTime(source);
+        long size;
+        try {
+            size = copy(source, partial);
+            Files.setLastModifiedTime(partial, lastModified);
+            if (verify && checksum(source) != checksum(partial)) {
+                throw new IOException("Checksum mismatch after copying " + source + " to " + target);
+            }
+
+            if (replaceExisting) {
+                Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                Files.move(partial, target);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+
+        Files.delete(source);
+        return size;
+    }
+
+    static boolean sameContent(Path first, Path second) throws IOException {
+        return Files.size(first) == Files.size(second) && checksum(first) == checksum(second);
+    }
+
+    private static long copy(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                long transferred = in.transferTo(position, size - position, out);
+                if (transferred <= 0) {
+                    throw new IOException("Source shrank while copying: " + source);
+                }
+                position += transferred;
+            }
+            out.force(true);
+            return size;
+        }
+    }
+
+    private static long checksum(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHECKSUM_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+}
@@ -1,70 +1,706 @@
 package de.tjorven.algorithm;
 
-import de.tjorven.MetadataListUI;
+import de.tjorven.algorithm.header.HeaderMetadata;
+import de.tjorven.algorithm.header.HeaderReader;
+import de.tjorven.metrics.AnalysisMetrics;
+import de.tjorven.metrics.ParseEvent;
+import lombok.AccessLevel;
 import lombok.Getter;
-import org.apache.tika.config.TikaConfig;
+import org.apache.tika.extractor.EmbeddedDocumentExtractor;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.extractor.ParsingEmbeddedDocumentExtractor;
 import org.apache.tika.metadata.Metadata;
-import org.apache.tika.parser.AutoDetectParser;
-import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.parser.ParseContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.ContentHandler;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 @Getter
 public class FolderAnalyser {
 
-    private final Map<String, Map<String, String>> metadata = new ConcurrentHashMap<>();
+    private static final Logger logger = LoggerFactory.getLogger(FolderAnalyser.class);
 
-    public FolderAnalyser(Path rootPath) throws IOException {
-        this.readToMap(rootPath);
+    private static final long PROGRESS_INTERVAL_MILLIS = 200;
+    private static final String CONTENT_TYPE = "Content-Type";
+    private static final String PARSED_BY = "X-TIKA:Parsed-By";
+    private static final String SKIPPED = "X-FileSorter:Skipped";
+    private static final String SCOPE = "X-FileSorter:Scope";
+    private static final String DIGEST = "X-FileSorter:Digest";
+    private static final String EXTRACTION = "X-FileSorter:Extraction";
+    private static final String MODE = "X-FileSorter:Mode";
+    private static final String PARSED = "parsed";
+    private static final String HEADER = "header";
+    private static final String DETECTED = "detected";
+
+    private static final ScheduledThreadPoolExecutor WATCHDOG = createWatchdog();
+
+    private final MetadataStore store = new MetadataStore();
+    private final Path rootPath;
+    private final AnalysisOptions options;
+    private final DirectoryWalker walker;
+    private final Set<InputStream> openStreams = ConcurrentHashMap.newKeySet();
+    private final AnalysisMetrics metrics;
+    private final Map<String, SkipReason> skippedFiles = new ConcurrentHashMap<>();
+    private final AdaptiveLimiter readLimiter;
+    private final AdaptiveLimiter parseLimiter;
+    @Getter(AccessLevel.NONE)
+    private final AttributeScope scope;
+    @Getter(AccessLevel.NONE)
+    private final Map<Long, Integer> sizeCounts = new ConcurrentHashMap<>();
+    @Getter(AccessLevel.NONE)
+    private final Queue<FileStamp> hashable = new ConcurrentLinkedQueue<>();
+    @Getter(AccessLevel.NONE)
+    private volatile ShardCoordinator coordinator;
+    @Getter(AccessLevel.NONE)
+    private MetadataIndex batchIndex;
+
+    public FolderAnalyser(Path rootPath) {
+        this(rootPath, AnalysisOptions.defaults());
+    }
+
+    public FolderAnalyser(Path rootPath, AnalysisOptions options) {
+        this.rootPath = rootPath;
+        this.options = options;
+        StageLimits read = options.getEffectiveReadStage();
+        StageLimits parse = options.getEffectiveParseStage();
+        this.readLimiter = new AdaptiveLimiter("read", read);
+        this.parseLimiter = new AdaptiveLimiter("parse", parse);
+        // Threads only carry files from one stage to the next; the limiters decide how many run in each.
+        int threads = Math.max(options.getWalkOptions().getParallelism(), read.max() + parse.max());
+        this.walker = new DirectoryWalker(rootPath, options.getWalkOptions().toBuilder().parallelism(threads).build());
+        this.metrics = new AnalysisMetrics(options.isCollectMetrics());
+        this.scope = new AttributeScope(options.getRequiredAttributes(), options.getExtensions());
     }
 
-    private void readToMap(Path path) throws IOException {
-        try (Stream<Path> stream = Files.list(path)) {
-            stream.parallel().filter(Files::isRegularFile).forEach(file -> {
-                try (InputStream is = Files.newInputStream(file)) {
-                    TikaConfig config = new TikaConfig(this.getClass().getClassLoader());
-                    AutoDetectParser parser = new AutoDetectParser(config);
+    public void analyse() throws IOException {
+        this.analyse(AnalysisListener.NONE);
+    }
 
-                    Metadata tikaMetadata = new Metadata();
-                    parser.parse(is, new BodyContentHandler(-1), tikaMetadata);
+    public void analyse(AnalysisListener listener) throws IOException {
+        ProgressTracker tracker = new ProgressTracker();
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "analysis-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> listener.onProgress(tracker.snapshot(false)),
+                PROGRESS_INTERVAL_MILLIS, PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
 
-                    Map<String, String> fileMeta = new HashMap<>();
-                    for (String name : tikaMetadata.names()) {
-                        fileMeta.put(name, tikaMetadata.get(name));
-                    }
+        try {
+            this.readToMap(listener, tracker);
+        } finally {
+            reporter.shutdownNow();
+            listener.onProgress(tracker.snapshot(true));
+        }
+    }
+
+    public void analyseFiles(Collection<Path> files) {
+        for (Path file : files) {
+            if (this.isCancelled()) {
+                return;
+            }
 
-                    this.metadata.put(file.getFileName().toString(), fileMeta);
+            String fileKey = this.walker.relativeKey(file);
+            try {
+                this.store.put(fileKey, withoutMarkers(this.parse(file, fileKey, Files.size(file))));
+            } catch (ParseSkippedException e) {
+                this.skipped(fileKey, file, e.getReason());
+            } catch (Exception e) {
+                logger.error("Could not parse: {}", file, e);
+            }
+        }
+    }
+
+    // Runs a known set of files through the same index, limiters and parallel stages as a full scan.
+    // Returns the files that could not be read, such as those another program still holds locked.
+    // The index stays open between batches; saveBatchIndex writes it back.
+    public Set<Path> analyseBatch(Collection<Path> files) {
+        MetadataIndex index = this.batchIndex();
+        Set<Path> failed = ConcurrentHashMap.newKeySet();
+        int threads = this.readLimiter.getLimits().max() + this.parseLimiter.getLimits().max();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.submit(() -> files.parallelStream().forEach(file -> {
+                if (this.isCancelled()) {
+                    return;
+                }
+
+                String fileKey = this.walker.relativeKey(file);
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    FileStamp stamp = new FileStamp(fileKey, file, attributes.size(), attributes.lastModifiedTime().toMillis());
+                    Map<String, String> fileMeta = this.cachedMetadata(index, stamp);
+                    if (fileMeta == null) {
+                        fileMeta = this.parseForIndex(file, fileKey, stamp.size());
+                        index.put(fileKey, stamp.size(), stamp.lastModified(), fileMeta);
+                    } else {
+                        this.metrics.recordCacheHit();
+                    }
+                    this.accept(stamp, fileMeta, AnalysisListener.NONE);
                 } catch (Exception e) {
-                    MetadataListUI.getLogger().error("Could not parse: {}", file, e);
+                    logger.warn("Could not parse {}", file, e);
+                    failed.add(file);
                 }
-            });
+            })).join();
+        } finally {
+            pool.shutdown();
         }
+        return failed;
     }
 
-    public List<Map.Entry<String, Integer>> findSimilarities() throws IOException {
-        Map<String, Integer> matches = new HashMap<>();
-        this.metadata.values().forEach(map ->
-                map.keySet().forEach(key -> matches.merge(key, 1, Integer::sum))
-        );
+    // Drops files that have left the folder, such as those just sorted away, from the store and the batch index.
+    public void forget(Collection<Path> files) {
+        MetadataIndex index = this.batchIndex();
+        Set<String> fileKeys = new HashSet<>();
+        for (Path file : files) {
+            String fileKey = this.walker.relativeKey(file);
+            fileKeys.add(fileKey);
+            this.store.remove(this.store.fileId(fileKey));
+            this.skippedFiles.remove(fileKey);
+            index.remove(fileKey);
+        }
+        this.hashable.removeIf(stamp -> fileKeys.contains(stamp.fileKey()));
+    }
+
+    public void saveBatchIndex() {
+        if (this.batchIndex == null) {
+            return;
+        }
+        try {
+            this.batchIndex.save();
+        } catch (IOException e) {
+            logger.warn("Could not save metadata index for {}", this.rootPath, e);
+        }
+    }
+
+    private MetadataIndex batchIndex() {
+        if (this.batchIndex == null) {
+            this.batchIndex = MetadataIndex.open(this.rootPath);
+        }
+        return this.batchIndex;
+    }
+
+    public void cancel() {
+        this.walker.cancel();
+        ShardCoordinator running = this.coordinator;
+        if (running != null) {
+            running.cancel();
+        }
+        for (InputStream stream : this.openStreams) {
+            try {
+                stream.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return this.walker.isCancelled();
+    }
+
+    private void readToMap(AnalysisListener listener, ProgressTracker tracker) throws IOException {
+        MetadataIndex index = MetadataIndex.open(this.rootPath);
+        Set<String> seenFiles = ConcurrentHashMap.newKeySet();
+        boolean sharded = this.options.getWorkers() > 0;
+        Queue<FileStamp> unparsed = new ConcurrentLinkedQueue<>();
+
+        this.walker.walk((file, attributes) -> {
+            if (this.scope.includes(file)) {
+                tracker.discovered(attributes.size());
+                if (this.isHashable(attributes.size())) {
+                    this.sizeCounts.merge(attributes.size(), 1, Integer::sum);
+                }
+            }
+        }, (file, attributes) -> {
+            String fileKey = this.walker.relativeKey(file);
+            seenFiles.add(fileKey);
+            if (!this.scope.includes(file)) {
+                return;
+            }
+            FileStamp stamp = new FileStamp(fileKey, file, attributes.size(), attributes.lastModifiedTime().toMillis());
+            Map<String, String> fileMeta = this.cachedMetadata(index, stamp);
+            if (fileMeta == null && sharded) {
+                unparsed.add(stamp);
+                return;
+            }
+
+            tracker.started(fileKey);
+            try {
+                if (fileMeta == null) {
+                    fileMeta = this.parseForIndex(file, fileKey, stamp.size());
+                    index.put(fileKey, stamp.size(), stamp.lastModified(), fileMeta);
+                } else {
+                    this.metrics.recordCacheHit();
+                }
+                this.accept(stamp, fileMeta, listener);
+            } catch (Exception e) {
+                if (!this.isCancelled()) {
+                    logger.error("Could not parse: {}", file, e);
+                }
+            } finally {
+                tracker.done(stamp.size());
+            }
+        });
+
+        if (!unparsed.isEmpty() && !this.isCancelled()) {
+            this.parseInWorkers(new ArrayList<>(unparsed), index, listener, tracker);
+        }
+        if (this.options.isDetectDuplicates() && !this.isCancelled()) {
+            this.hashRemainingCandidates(index);
+        }
+        if (!this.isCancelled()) {
+            index.retainAll(seenFiles);
+        }
+        try {
+            index.save();
+        } catch (IOException e) {
+            logger.warn("Could not save metadata index for {}", this.rootPath, e);
+        }
+    }
+
+    private Map<String, String> cachedMetadata(MetadataIndex index, FileStamp stamp) {
+        Map<String, String> fileMeta = index.lookup(stamp.fileKey(), stamp.size(), stamp.lastModified());
+        if (fileMeta == null) {
+            return null;
+        }
+        if (fileMeta.containsKey(SKIPPED)) {
+            // Skipped under different limits, so it deserves another attempt.
+            return this.cachedSkip(fileMeta) != null ? fileMeta : null;
+        }
+        if (!this.options.getMode().name().equals(fileMeta.get(MODE))) {
+            // Full text and metadata-only runs extract different keys, so neither reuses the other's entries.
+            return null;
+        }
+        if (fileMeta.containsKey(SCOPE) && !this.scope.isCoveredBy(fileMeta.get(SCOPE))) {
+            return null;
+        }
+        if (HEADER.equals(fileMeta.get(EXTRACTION)) && !this.usesHeaderFastPath()) {
+            // Header readers know only a few tags, so a run that asked for Tika gets a real parse.
+            return null;
+        }
+        return fileMeta;
+    }
+
+    // Takes what the index holds for a file, whether it was parsed here, by a worker or earlier, into the store.
+    private void accept(FileStamp stamp, Map<String, String> fileMeta, AnalysisListener listener) {
+        if (fileMeta.containsKey(SKIPPED)) {
+            SkipReason reason = this.cachedSkip(fileMeta);
+            if (reason != null) {
+                this.skippedFiles.put(stamp.fileKey(), reason);
+            }
+            return;
+        }
+
+        String digest = fileMeta.get(DIGEST);
+        Map<String, String> metadata = withoutMarkers(fileMeta);
+        int fileId = this.store.put(stamp.fileKey(), metadata);
+        if (digest != null) {
+            this.store.setDigest(fileId, digest);
+        }
+        if (this.isHashable(stamp.size())) {
+            this.hashable.add(stamp);
+        }
+        listener.onResult(stamp.fileKey(), metadata);
+    }
+
+    private void parseInWorkers(List<FileStamp> files, MetadataIndex index, AnalysisListener listener, ProgressTracker tracker)
+            throws IOException {
+        Set<Long> sharedSizes = this.sizeCounts.entrySet().stream()
+                .filter(entry -> entry.getValue() > 1)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+        ShardCoordinator coordinator = new ShardCoordinator(this.rootPath, this.options, sharedSizes, new ShardCoordinator.Listener() {
+            @Override
+            public void started(FileStamp stamp) {
+                tracker.started(stamp.fileKey());
+            }
+
+            @Override
+            public void parsed(FileStamp stamp, Map<String, String> metadata) {
+                try {
+                    if (metadata != null) {
+                        index.put(stamp.fileKey(), stamp.size(), stamp.lastModified(), metadata);
+                        FolderAnalyser.this.accept(stamp, metadata, listener);
+                    }
+                } finally {
+                    tracker.done(stamp.size());
+                }
+            }
+
+            @Override
+            public void crashed(FileStamp stamp) {
+                this.parsed(stamp, FolderAnalyser.this.skipMarker(SkipReason.CRASH));
+            }
+        });
+
+        this.coordinator = coordinator;
+        if (!this.isCancelled()) {
+            coordinator.run(files);
+        }
+    }
+
+    private boolean isHashable(long size) {
+        // Every empty file would otherwise count as a copy of every other one.
+        return this.options.isDetectDuplicates() && size > 0;
+    }
+
+    // A worker only sees its own shard, so the coordinator tells it which sizes the whole tree has more than once.
+    void markSharedSize(long size) {
+        this.sizeCounts.put(size, 2);
+    }
+
+    private boolean isDuplicateCandidate(long size) {
+        return this.isHashable(size) && this.sizeCounts.getOrDefault(size, 0) > 1;
+    }
+
+    // Files are hashed while they are parsed only if their size was already shared when the parse started.
+    // Sizes that turned out to collide later, and files served from the header fast path or the cache, are read here.
+    private void hashRemainingCandidates(MetadataIndex index) {
+        Map<Long, List<FileStamp>> bySize = new HashMap<>();
+        for (FileStamp stamp : this.hashable) {
+            bySize.computeIfAbsent(stamp.size(), size -> new ArrayList<>()).add(stamp);
+        }
+
+        List<FileStamp> missing = new ArrayList<>();
+        for (List<FileStamp> sameSize : bySize.values()) {
+            if (sameSize.size() < 2) {
+                continue;
+            }
+            for (FileStamp stamp : sameSize) {
+                if (this.store.digest(this.store.fileId(stamp.fileKey())) == null) {
+                    missing.add(stamp);
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(this.readLimiter.getLimits().max());
+        try {
+            pool.submit(() -> missing.parallelStream().forEach(stamp -> this.hash(stamp, index))).join();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void hash(FileStamp stamp, MetadataIndex index) {
+        if (this.isCancelled()) {
+            return;
+        }
+
+        try (DigestInputStream in = ContentDigest.wrap(new PrefetchingInputStream(stamp.file(), stamp.size(), this.readLimiter))) {
+            String digest = ContentDigest.finish(in);
+            this.store.setDigest(this.store.fileId(stamp.fileKey()), digest);
+            Map<String, String> cached = index.lookup(stamp.fileKey(), stamp.size(), stamp.lastModified());
+            if (cached != null) {
+                Map<String, String> updated = new HashMap<>(cached);
+                updated.put(DIGEST, digest);
+                index.put(stamp.fileKey(), stamp.size(), stamp.lastModified(), updated);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not hash {}", stamp.file(), e);
+        }
+    }
+
+    // What the index records for a file: its metadata, or why parsing it was given up.
+    Map<String, String> parseForIndex(Path file, String fileKey, long size) throws Exception {
+        try {
+            Map<String, String> fileMeta = new HashMap<>(this.parse(file, fileKey, size));
+            fileMeta.put(MODE, this.options.getMode().name());
+            return fileMeta;
+        } catch (ParseSkippedException e) {
+            logger.warn("Skipped {}: {}", file, e.getReason().getDescription());
+            return this.skipMarker(e.getReason());
+        }
+    }
+
+    private Map<String, String> skipMarker(SkipReason reason) {
+        return Map.of(SKIPPED, reason.name() + "@" + this.options.getLimits().signature());
+    }
+
+    private Map<String, String> parse(Path file, String fileKey, long size) throws Exception {
+        if (this.usesHeaderFastPath()) {
+            Map<String, String> fileMeta = this.parseHeader(file, fileKey, size);
+            if (fileMeta != null) {
+                // Marked as partial, so a wider scope or a run without the fast path parses the file again.
+                fileMeta.put(SCOPE, this.scope.signature());
+                fileMeta.put(EXTRACTION, HEADER);
+                return fileMeta;
+            }
+        }
+
+        // The head of the file is read before a parse slot is taken, so a slow disk never keeps a parser idle.
+        InputStream in = new PrefetchingInputStream(file, size, this.readLimiter);
+        AdaptiveLimiter.Permit parsing;
+        try {
+            parsing = this.parseLimiter.acquire();
+        } catch (InterruptedException e) {
+            closeQuietly(in);
+            throw e;
+        }
+        try (parsing) {
+            return this.parseWithTika(file, fileKey, size, in);
+        }
+    }
+
+    // Header readers only know a handful of tags, so they stand in for Tika only when the sort named the attributes it needs.
+    private boolean usesHeaderFastPath() {
+        return this.options.isHeaderFastPath() && this.options.getMode() == AnalysisMode.METADATA_ONLY && this.scope.isSelective();
+    }
+
+    private Map<String, String> parseHeader(Path file, String fileKey, long size) throws InterruptedException {
+        ParseEvent event = new ParseEvent();
+        event.begin();
+        long start = this.metrics.isEnabled() ? System.nanoTime() : 0;
+        HeaderMetadata header;
+        try (AdaptiveLimiter.Permit ignored = this.readLimiter.acquire()) {
+            header = HeaderReader.read(file);
+        }
+        if (header == null || !header.metadata().keySet().containsAll(this.scope.attributes())) {
+            return null;
+        }
+
+        event.end();
+        String mimeType = header.metadata().get(CONTENT_TYPE);
+        String parser = "Header:" + header.format();
+        if (event.shouldCommit()) {
+            event.path = fileKey;
+            event.mimeType = mimeType;
+            event.parser = parser;
+            event.bytes = size;
+            event.outcome = HEADER;
+            event.commit();
+        }
+        if (this.metrics.isEnabled()) {
+            this.metrics.recordParse(fileKey, mimeType, parser, size, System.nanoTime() - start, false);
+        }
+        return new HashMap<>(header.metadata());
+    }
+
+    private Map<String, String> parseWithTika(Path file, String fileKey, long size, InputStream in) throws Exception {
+        ParseEvent event = new ParseEvent();
+        event.begin();
+        long start = this.metrics.isEnabled() ? System.nanoTime() : 0;
+        Metadata tikaMetadata = new Metadata();
+        String outcome = "failed";
+        ParseLimits limits = this.options.getLimits();
+
+        // The digest sits below the size limit so it sees every byte the parser reads, and can read on past the limit.
+        DigestInputStream digesting = this.isDuplicateCandidate(size) ? ContentDigest.wrap(in) : null;
+        try (LimitedInputStream is = new LimitedInputStream(digesting != null ? digesting : in, limits.getMaxBytes());
+             TikaInputStream stream = TikaInputStream.get(is)) {
+            this.openStreams.add(is);
+            Deadline deadline = new Deadline(Thread.currentThread());
+            // Closing the stream makes a stuck parser fail on its next read instead of pinning the worker.
+            ScheduledFuture<?> watchdog = WATCHDOG.schedule(() -> {
+                if (deadline.expire()) {
+                    closeQuietly(is);
+                }
+            }, limits.getTimeout().toMillis(), TimeUnit.MILLISECONDS);
+
+            AnalysisMode mode = this.options.getMode();
+            boolean selective = this.scope.isSelective() && mode == AnalysisMode.METADATA_ONLY;
+            ParseContext context = mode.createContext();
+            EmbeddedDocumentExtractor extractor = context.get(EmbeddedDocumentExtractor.class);
+            LimitedEmbeddedDocuments embedded = new LimitedEmbeddedDocuments(
+                    extractor != null ? extractor : new ParsingEmbeddedDocumentExtractor(context), limits.getMaxEmbeddedDocuments());
+            context.set(EmbeddedDocumentExtractor.class, embedded);
+
+            boolean partial = false;
+            try {
+                if (selective) {
+                    tikaMetadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, file.getFileName().toString());
+                    MediaType type = TikaParserPool.config().getDetector().detect(stream, tikaMetadata);
+                    if (!this.scope.canYield(type)) {
+                        // Nothing this type carries is in the hierarchy, so the sort only needs to know what it is.
+                        tikaMetadata.set(CONTENT_TYPE, type.toString());
+                        outcome = DETECTED;
+                        Map<String, String> fileMeta = new HashMap<>(Map.of(CONTENT_TYPE, type.toString(), SCOPE, this.scope.signature()));
+                        putDigest(fileMeta, digesting, file);
+                        return fileMeta;
+                    }
+                }
+                ContentHandler handler = selective
+                        ? new RequiredMetadataHandler(tikaMetadata, this.scope.attributes())
+                        : mode.createHandler();
+                TikaParserPool.parser().parse(stream, handler, tikaMetadata, context);
+            } catch (Exception e) {
+                if (selective && RequiredMetadataHandler.isComplete(e)) {
+                    partial = true;
+                } else {
+                    SkipReason reason = deadline.isExpired() ? SkipReason.TIMEOUT : is.isLimitExceeded() ? SkipReason.SIZE : null;
+                    if (reason == null) {
+                        throw e;
+                    }
+                    outcome = reason.getDescription();
+                    throw new ParseSkippedException(reason, e);
+                }
+            } finally {
+                watchdog.cancel(false);
+                deadline.finish();
+                this.openStreams.remove(is);
+            }
+
+            if (embedded.isLimitExceeded()) {
+                outcome = SkipReason.EMBEDDED_DOCUMENTS.getDescription();
+                throw new ParseSkippedException(SkipReason.EMBEDDED_DOCUMENTS, null);
+            }
+
+            Map<String, String> fileMeta = new HashMap<>();
+            for (String name : tikaMetadata.names()) {
+                fileMeta.put(name, tikaMetadata.get(name));
+            }
+            if (partial) {
+                fileMeta.put(SCOPE, this.scope.signature());
+            }
+            putDigest(fileMeta, digesting, file);
+            outcome = PARSED;
+            return fileMeta;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.path = fileKey;
+                event.mimeType = tikaMetadata.get(CONTENT_TYPE);
+                event.parser = leafParser(tikaMetadata);
+                event.bytes = size;
+                event.outcome = outcome;
+                event.commit();
+            }
+            if (this.metrics.isEnabled()) {
+                this.metrics.recordParse(fileKey, tikaMetadata.get(CONTENT_TYPE), leafParser(tikaMetadata), size,
+                        System.nanoTime() - start, !PARSED.equals(outcome));
+            }
+        }
+    }
+
+    private static void putDigest(Map<String, String> fileMeta, DigestInputStream digesting, Path file) {
+        if (digesting == null) {
+            return;
+        }
+        try {
+            fileMeta.put(DIGEST, ContentDigest.finish(digesting));
+        } catch (IOException e) {
+            logger.debug("Could not finish digest of {}, it is hashed separately", file, e);
+        }
+    }
+
+    private static Map<String, String> withoutMarkers(Map<String, String> fileMeta) {
+        if (!fileMeta.containsKey(SCOPE) && !fileMeta.containsKey(DIGEST) && !fileMeta.containsKey(EXTRACTION)
+                && !fileMeta.containsKey(MODE)) {
+            return fileMeta;
+        }
+        Map<String, String> copy = new HashMap<>(fileMeta);
+        copy.remove(SCOPE);
+        copy.remove(DIGEST);
+        copy.remove(EXTRACTION);
+        copy.remove(MODE);
+        return copy;
+    }
+
+    private SkipReason cachedSkip(Map<String, String> fileMeta) {
+        String marker = fileMeta.get(SKIPPED);
+        int separator = marker.indexOf('@');
+        if (separator < 0 || !marker.substring(separator + 1).equals(this.options.getLimits().signature())) {
+            return null;
+        }
+        try {
+            return SkipReason.valueOf(marker.substring(0, separator));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void skipped(String fileKey, Path file, SkipReason reason) {
+        this.skippedFiles.put(fileKey, reason);
+        logger.warn("Skipped {}: {}", file, reason.getDescription());
+    }
+
+    private static void closeQuietly(InputStream stream) {
+        try {
+            stream.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    // The watchdog interrupts and the worker clears that interrupt under one lock. A watchdog that fires while the
+    // parse is finishing either interrupts before the clear or not at all, so it never reaches the next file.
+    private static final class Deadline {
+
+        private final Thread worker;
+        private boolean finished;
+        private volatile boolean expired;
+
+        private Deadline(Thread worker) {
+            this.worker = worker;
+        }
+
+        private synchronized boolean expire() {
+            if (this.finished) {
+                return false;
+            }
+            this.expired = true;
+            this.worker.interrupt();
+            return true;
+        }
+
+        private synchronized void finish() {
+            this.finished = true;
+            if (this.expired) {
+                Thread.interrupted();
+            }
+        }
+
+        private boolean isExpired() {
+            return this.expired;
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor createWatchdog() {
+        ScheduledThreadPoolExecutor watchdog = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "parse-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watchdog.setRemoveOnCancelPolicy(true);
+        return watchdog;
+    }
+
+    private static String leafParser(Metadata tikaMetadata) {
+        String[] parsedBy = tikaMetadata.getValues(PARSED_BY);
+        if (parsedBy == null || parsedBy.length == 0) {
+            return null;
+        }
+        String parser = parsedBy[parsedBy.length - 1];
+        return parser.substring(parser.lastIndexOf('.') + 1);
+    }
 
+    public List<Map.Entry<String, Integer>> findSimilarities() {
         Set<String> blacklist = this.loadBlacklist();
 
-        return matches.entrySet().stream()
-                .filter(entry -> blacklist.stream().noneMatch(b -> entry.getKey().startsWith(b)))
+        return this.store.attributes().stream()
+                .filter(attribute -> blacklist.stream().noneMatch(attribute::startsWith))
+                .map(attribute -> Map.entry(attribute, this.store.attributeFrequency(attribute)))
                 .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
                 .toList();
     }
 
     public Set<String> getFileNames() {
-        return Collections.unmodifiableSet(this.metadata.keySet());
+        return Set.copyOf(this.store.fileKeys());
     }
 
     private Set<String> loadBlacklist() {
@@ -78,4 +714,4 @@ public class FolderAnalyser {
             return Collections.emptySet();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,145 @@
+package de.tjorven.algorithm;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// The results of part of a shard, written once by a worker and merged by the coordinator. Attribute names and
+// values are stored once per segment and referenced by number after that, since most of them repeat.
+// Segments are renamed into place when complete, and the checksum catches one that was cut short anyway.
+final class IndexSegment {
+
+    private static final int MAGIC = 0x46534753;
+    private static final int FORMAT_VERSION = 1;
+    private static final int FAILED = -1;
+    private static final int LITERAL = 0;
+
+    private IndexSegment() {
+    }
+
+    static void write(Path file, List<Entry> entries) throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)), new CRC32C());
+        try (DataOutputStream out = new DataOutputStream(checked)) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(entries.size());
+
+            Map<String, Integer> dictionary = new HashMap<>();
+            for (Entry entry : entries) {
+                out.writeUTF(entry.fileKey());
+                out.writeLong(entry.size());
+                out.writeLong(entry.lastModified());
+                if (entry.metadata() == null) {
+                    out.writeInt(FAILED);
+                    continue;
+                }
+                out.writeInt(entry.metadata().size());
+                for (Map.Entry<String, String> field : entry.metadata().entrySet()) {
+                    writeReference(out, dictionary, field.getKey());
+                    writeReference(out, dictionary, field.getValue() != null ? field.getValue() : "");
+                }
+            }
+            out.writeLong(checked.getChecksum().getValue());
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static List<Entry> read(Path file) throws IOException {
+        CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(Files.newInputStream(file)), new CRC32C());
+        try (DataInputStream in = new DataInputStream(checked)) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unsupported index segment format: " + file);
+            }
+
+            int count = in.readInt();
+            List<Entry> entries = new ArrayList<>(count);
+            List<String> dictionary = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                String fileKey = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                int fieldCount = in.readInt();
+                if (fieldCount == FAILED) {
+                    entries.add(new Entry(fileKey, size, lastModified, null));
+                    continue;
+                }
+
+                Map<String, String> metadata = new HashMap<>(fieldCount * 2);
+                for (int j = 0; j < fieldCount; j++) {
+                    metadata.put(readReference(in, dictionary), readReference(in, dictionary));
+                }
+                entries.add(new Entry(fileKey, size, lastModified, metadata));
+            }
+
+            long expected = checked.getChecksum().getValue();
+            if (in.readLong() != expected) {
+                throw new IOException("Index segment is damaged: " + file);
+            }
+            return entries;
+        }
+    }
+
+    private static void writeReference(DataOutputStream out, Map<String, Integer> dictionary, String value) throws IOException {
+        Integer id = dictionary.get(value);
+        if (id != null) {
+            writeVarInt(out, id + 1);
+            return;
+        }
+
+        dictionary.put(value, dictionary.size());
+        writeVarInt(out, LITERAL);
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readReference(DataInputStream in, List<String> dictionary) throws IOException {
+        int reference = readVarInt(in);
+        if (reference != LITERAL) {
+            if (reference > dictionary.size()) {
+                throw new IOException("Index segment refers to an unknown value");
+            }
+            return dictionary.get(reference - 1);
+        }
+
+        byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        dictionary.add(value);
+        return value;
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed number in index segment");
+    }
+
+    // metadata is null for a file the worker could not parse, which is finished all the same.
+    record Entry(String fileKey, long size, long lastModified, Map<String, String> metadata) {
+    }
+}
@@ -0,0 +1,43 @@
+package de.tjorven.algorithm;
+
+import org.apache.tika.extractor.EmbeddedDocumentExtractor;
+import org.apache.tika.metadata.Metadata;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+class LimitedEmbeddedDocuments implements EmbeddedDocumentExtractor {
+
+    private final EmbeddedDocumentExtractor delegate;
+    private final int limit;
+    private int count;
+    private boolean limitExceeded;
+
+    LimitedEmbeddedDocuments(EmbeddedDocumentExtractor delegate, int limit) {
+        this.delegate = delegate;
+        this.limit = limit;
+    }
+
+    boolean isLimitExceeded() {
+        return this.limitExceeded;
+    }
+
+    @Override
+    public boolean shouldParseEmbedded(Metadata metadata) {
+        if (this.limitExceeded || !this.delegate.shouldParseEmbedded(metadata)) {
+            return false;
+        }
+        if (++this.count > this.limit) {
+            this.limitExceeded = true;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void parseEmbedded(InputStream stream, ContentHandler handler, Metadata metadata, boolean outputHtml) throws SAXException, IOException {
+        this.delegate.parseEmbedded(stream, handler, metadata, outputHtml);
+    }
+}
@@ -0,0 +1,67 @@
+package de.tjorven.algorithm;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+class LimitedInputStream extends FilterInputStream {
+
+    private final long limit;
+    private long consumed;
+    private long mark;
+    private volatile boolean limitExceeded;
+
+    LimitedInputStream(InputStream in, long limit) {
+        super(in);
+        this.limit = limit;
+    }
+
+    boolean isLimitExceeded() {
+        return this.limitExceeded;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int value = super.read();
+        if (value >= 0) {
+            this.count(1);
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read > 0) {
+            this.count(read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        this.count(skipped);
+        return skipped;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+        super.mark(readLimit);
+        this.mark = this.consumed;
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        super.reset();
+        this.consumed = this.mark;
+    }
+
+    private void count(long bytes) throws IOException {
+        this.consumed += bytes;
+        if (this.consumed > this.limit) {
+            this.limitExceeded = true;
+            throw new IOException("Read more than " + this.limit + " bytes");
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package de.tjorven.algorithm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class MetadataIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetadataIndex.class);
+
+    private static final int MAGIC = 0x46534958;
+    private static final int FORMAT_VERSION = 3;
+    private static final Path INDEX_DIRECTORY = Paths.get(System.getProperty("user.home"), ".file-sorter", "index");
+
+    private final Path indexFile;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    private MetadataIndex(Path indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    public static MetadataIndex open(Path rootPath) {
+        String rootKey = rootPath.toAbsolutePath().normalize().toString();
+        String fileName = UUID.nameUUIDFromBytes(rootKey.getBytes(StandardCharsets.UTF_8)) + ".idx";
+        MetadataIndex index = new MetadataIndex(INDEX_DIRECTORY.resolve(fileName));
+
+        if (Files.exists(index.indexFile)) {
+            try {
+                index.load();
+            } catch (IOException e) {
+                logger.warn("Discarding unreadable metadata index: {}", index.indexFile, e);
+                index.entries.clear();
+            }
+        }
+        return index;
+    }
+
+    public Map<String, String> lookup(String key, long size, long lastModified) {
+        Entry entry = this.entries.get(key);
+        if (entry == null || entry.size() != size || entry.lastModified() != lastModified) {
+            return null;
+        }
+        return entry.metadata();
+    }
+
+    public void put(String key, long size, long lastModified, Map<String, String> metadata) {
+        this.entries.put(key, new Entry(size, lastModified, metadata));
+        this.dirty = true;
+    }
+
+    public void remove(String key) {
+        if (this.entries.remove(key) != null) {
+            this.dirty = true;
+        }
+    }
+
+    public void retainAll(Set<String> keys) {
+        if (this.entries.keySet().retainAll(keys)) {
+            this.dirty = true;
+        }
+    }
+
+    public void save() throws IOException {
+        if (!this.dirty) {
+            return;
+        }
+
+        Files.createDirectories(this.indexFile.getParent());
+        Path tempFile = this.indexFile.resolveSibling(this.indexFile.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(this.entries.size());
+            for (Map.Entry<String, Entry> indexEntry : this.entries.entrySet()) {
+                Entry entry = indexEntry.getValue();
+                out.writeUTF(indexEntry.getKey());
+                out.writeLong(entry.size());
+                out.writeLong(entry.lastModified());
+                out.writeInt(entry.metadata().size());
+                for (Map.Entry<String, String> field : entry.metadata().entrySet()) {
+                    out.writeUTF(field.getKey());
+                    writeString(out, field.getValue());
+                }
+            }
+        }
+
+        Files.move(tempFile, this.indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.dirty = false;
+    }
+
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unsupported index format");
+            }
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                int fieldCount = in.readInt();
+
+                Map<String, String> metadata = new HashMap<>(fieldCount * 2);
+                for (int j = 0; j < fieldCount; j++) {
+                    metadata.put(in.readUTF(), readString(in));
+                }
+                this.entries.put(key, new Entry(size, lastModified, metadata));
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public record Entry(long size, long lastModified, Map<String, String> metadata) {
+    }
+}
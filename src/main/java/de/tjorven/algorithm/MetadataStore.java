@@ -0,0 +1,536 @@
+package de.tjorven.algorithm;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class MetadataStore {
+
+    private static final int ABSENT = -1;
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final List<String> fileKeys = new ArrayList<>();
+    private final Map<String, Integer> fileIds = new HashMap<>();
+    private final Map<String, Integer> attributeIds = new HashMap<>();
+    private final List<Column> columns = new ArrayList<>();
+    // Ids of removed files. They are skipped by allFiles and groupBy, and handed out again by the next put.
+    private final BitSet removed = new BitSet();
+    // Raw digest bytes by file id, so a million hashed files cost one array slot each instead of a boxed map entry.
+    private byte[][] digests = new byte[0][];
+
+    public int put(String fileKey, Map<String, String> metadata) {
+        // Copied before the lock is taken, so parse threads only queue for the dictionary and posting-list update.
+        List<Map.Entry<String, String>> values = new ArrayList<>(metadata.size());
+        metadata.forEach((attribute, value) -> {
+            if (value != null) {
+                values.add(Map.entry(attribute, value));
+            }
+        });
+
+        this.lock.writeLock().lock();
+        try {
+            Integer existing = this.fileIds.get(fileKey);
+            int fileId;
+            if (existing != null) {
+                fileId = existing;
+                this.clearUnlocked(fileId);
+            } else if (!this.removed.isEmpty()) {
+                fileId = this.removed.nextSetBit(0);
+                this.removed.clear(fileId);
+                this.fileKeys.set(fileId, fileKey);
+                this.fileIds.put(fileKey, fileId);
+            } else {
+                fileId = this.fileKeys.size();
+                this.fileKeys.add(fileKey);
+                this.fileIds.put(fileKey, fileId);
+            }
+
+            for (Map.Entry<String, String> value : values) {
+                this.column(value.getKey()).set(fileId, value.getValue());
+            }
+            return fileId;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    // Drops a file from every column and posting list. Its id may be reused by a later put.
+    public void remove(int fileId) {
+        this.lock.writeLock().lock();
+        try {
+            if (fileId < 0 || fileId >= this.fileKeys.size() || this.removed.get(fileId)) {
+                return;
+            }
+            this.clearUnlocked(fileId);
+            this.fileIds.remove(this.fileKeys.get(fileId));
+            this.fileKeys.set(fileId, null);
+            this.removed.set(fileId);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    // File ids run from 0 to size() - 1. Removed files leave gaps until their id is reused.
+    public int size() {
+        this.lock.readLock().lock();
+        try {
+            return this.fileKeys.size();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        this.lock.readLock().lock();
+        try {
+            return this.fileKeys.size() == this.removed.cardinality();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public String fileKey(int fileId) {
+        this.lock.readLock().lock();
+        try {
+            return this.fileKeys.get(fileId);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public int fileId(String fileKey) {
+        this.lock.readLock().lock();
+        try {
+            return this.fileIds.getOrDefault(fileKey, ABSENT);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public List<String> fileKeys() {
+        this.lock.readLock().lock();
+        try {
+            return this.fileKeys.stream().filter(Objects::nonNull).toList();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public List<String> attributes() {
+        this.lock.readLock().lock();
+        try {
+            return this.columns.stream().map(column -> column.name).toList();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public int attributeFrequency(String attribute) {
+        this.lock.readLock().lock();
+        try {
+            Integer attributeId = this.attributeIds.get(attribute);
+            return attributeId == null ? 0 : this.columns.get(attributeId).present;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public int cardinality(String attribute) {
+        this.lock.readLock().lock();
+        try {
+            Integer attributeId = this.attributeIds.get(attribute);
+            return attributeId == null ? 0 : this.columns.get(attributeId).distinct;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public int[] files(String attribute, String value) {
+        this.lock.readLock().lock();
+        try {
+            Integer attributeId = this.attributeIds.get(attribute);
+            if (attributeId == null) {
+                return new int[0];
+            }
+
+            Column column = this.columns.get(attributeId);
+            Integer valueId = column.dictionary.get(value);
+            return valueId == null ? new int[0] : column.posting(valueId);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public int[] allFiles() {
+        this.lock.readLock().lock();
+        try {
+            return this.allFilesUnlocked(this.fileKeys.size());
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public Map<String, int[]> groupBy(String attribute, int[] candidates) {
+        this.lock.readLock().lock();
+        try {
+            int fileCount = this.fileKeys.size();
+            Integer attributeId = this.attributeIds.get(attribute);
+            Map<String, int[]> groups = new LinkedHashMap<>();
+            if (attributeId == null) {
+                groups.put(null, candidates == null ? this.allFilesUnlocked(fileCount) : candidates);
+                return groups;
+            }
+
+            Column column = this.columns.get(attributeId);
+            if (candidates == null) {
+                boolean[] covered = new boolean[fileCount];
+                for (int valueId = 0; valueId < column.values.size(); valueId++) {
+                    int[] posting = column.posting(valueId);
+                    if (posting.length > 0) {
+                        groups.put(column.values.get(valueId), posting);
+                        for (int fileId : posting) {
+                            covered[fileId] = true;
+                        }
+                    }
+                }
+
+                IntList missing = new IntList();
+                for (int fileId = 0; fileId < fileCount; fileId++) {
+                    if (!covered[fileId] && !this.removed.get(fileId)) {
+                        missing.add(fileId);
+                    }
+                }
+                if (missing.size > 0) {
+                    groups.put(null, missing.toArray());
+                }
+                return groups;
+            }
+
+            Map<Integer, IntList> byValue = new LinkedHashMap<>();
+            for (int fileId : candidates) {
+                byValue.computeIfAbsent(column.valueId(fileId), key -> new IntList()).add(fileId);
+            }
+            byValue.forEach((valueId, files) ->
+                    groups.put(valueId == ABSENT ? null : column.values.get(valueId), files.toArray()));
+            return groups;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public String value(int fileId, String attribute) {
+        this.lock.readLock().lock();
+        try {
+            Integer attributeId = this.attributeIds.get(attribute);
+            return attributeId == null ? null : this.columns.get(attributeId).get(fileId);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public String value(String fileKey, String attribute) {
+        int fileId = this.fileId(fileKey);
+        return fileId == ABSENT ? null : this.value(fileId, attribute);
+    }
+
+    public Map<String, String> toMap(int fileId) {
+        this.lock.readLock().lock();
+        try {
+            Map<String, String> metadata = new HashMap<>();
+            for (Column column : this.columns) {
+                String value = column.get(fileId);
+                if (value != null) {
+                    metadata.put(column.name, value);
+                }
+            }
+            return metadata;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public void setDigest(int fileId, String digest) {
+        this.lock.writeLock().lock();
+        try {
+            if (fileId >= this.digests.length) {
+                this.digests = Arrays.copyOf(this.digests, Math.max(fileId + 1, this.fileKeys.size()));
+            }
+            this.digests[fileId] = HEX.parseHex(digest);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    public String digest(int fileId) {
+        this.lock.readLock().lock();
+        try {
+            byte[] digest = fileId >= 0 && fileId < this.digests.length ? this.digests[fileId] : null;
+            return digest == null ? null : HEX.formatHex(digest);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    // Files with identical content, each group sorted by file id. Files that were never hashed are in no group.
+    public List<int[]> duplicateGroups() {
+        this.lock.readLock().lock();
+        try {
+            Map<ByteBuffer, IntList> byDigest = new HashMap<>();
+            for (int fileId = 0; fileId < this.digests.length; fileId++) {
+                byte[] digest = this.digests[fileId];
+                if (digest != null) {
+                    byDigest.computeIfAbsent(ByteBuffer.wrap(digest), key -> new IntList()).add(fileId);
+                }
+            }
+            List<int[]> groups = new ArrayList<>();
+            for (IntList files : byDigest.values()) {
+                if (files.size > 1) {
+                    groups.add(files.toArray());
+                }
+            }
+            return groups;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public void clear() {
+        this.lock.writeLock().lock();
+        try {
+            this.fileKeys.clear();
+            this.fileIds.clear();
+            this.attributeIds.clear();
+            this.columns.clear();
+            this.digests = new byte[0][];
+            this.removed.clear();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private void clearUnlocked(int fileId) {
+        for (Column column : this.columns) {
+            column.clear(fileId);
+        }
+        if (fileId < this.digests.length) {
+            this.digests[fileId] = null;
+        }
+    }
+
+    private int[] allFilesUnlocked(int fileCount) {
+        int[] files = new int[fileCount - this.removed.cardinality()];
+        int count = 0;
+        for (int i = 0; i < fileCount; i++) {
+            if (!this.removed.get(i)) {
+                files[count++] = i;
+            }
+        }
+        return files;
+    }
+
+    private Column column(String attribute) {
+        Integer attributeId = this.attributeIds.get(attribute);
+        if (attributeId != null) {
+            return this.columns.get(attributeId);
+        }
+
+        Column column = new Column(attribute);
+        this.attributeIds.put(attribute, this.columns.size());
+        this.columns.add(column);
+        return column;
+    }
+
+    private static final class Column {
+
+        private static final int INITIAL_CAPACITY = 16;
+
+        private final String name;
+        private final Map<String, Integer> dictionary = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        private final List<IntList> postings = new ArrayList<>();
+
+        private int present;
+        private int distinct;
+
+        private int[] sparseFiles = new int[INITIAL_CAPACITY];
+        private int[] sparseValues = new int[INITIAL_CAPACITY];
+
+        private int[] dense;
+
+        private Column(String name) {
+            this.name = name;
+        }
+
+        private String get(int fileId) {
+            int valueId = this.valueId(fileId);
+            return valueId == ABSENT ? null : this.values.get(valueId);
+        }
+
+        private int valueId(int fileId) {
+            if (this.dense != null) {
+                return fileId < this.dense.length ? this.dense[fileId] : ABSENT;
+            }
+
+            int index = Arrays.binarySearch(this.sparseFiles, 0, this.present, fileId);
+            return index >= 0 ? this.sparseValues[index] : ABSENT;
+        }
+
+        private int[] posting(int valueId) {
+            return this.postings.get(valueId).toArray();
+        }
+
+        private void set(int fileId, String value) {
+            int valueId = this.dictionary.computeIfAbsent(value, key -> {
+                this.values.add(key);
+                this.postings.add(new IntList());
+                return this.values.size() - 1;
+            });
+
+            int previous = this.valueId(fileId);
+            if (previous == valueId) {
+                return;
+            }
+            if (previous != ABSENT) {
+                this.unlink(fileId, previous);
+            }
+            this.link(fileId, valueId);
+
+            if (this.dense != null) {
+                this.ensureDenseCapacity(fileId + 1);
+                if (this.dense[fileId] == ABSENT) {
+                    this.present++;
+                }
+                this.dense[fileId] = valueId;
+                return;
+            }
+
+            int index = Arrays.binarySearch(this.sparseFiles, 0, this.present, fileId);
+            if (index >= 0) {
+                this.sparseValues[index] = valueId;
+                return;
+            }
+
+            int insertAt = -index - 1;
+            if (this.present == this.sparseFiles.length) {
+                int capacity = this.sparseFiles.length * 2;
+                this.sparseFiles = Arrays.copyOf(this.sparseFiles, capacity);
+                this.sparseValues = Arrays.copyOf(this.sparseValues, capacity);
+            }
+            System.arraycopy(this.sparseFiles, insertAt, this.sparseFiles, insertAt + 1, this.present - insertAt);
+            System.arraycopy(this.sparseValues, insertAt, this.sparseValues, insertAt + 1, this.present - insertAt);
+            this.sparseFiles[insertAt] = fileId;
+            this.sparseValues[insertAt] = valueId;
+            this.present++;
+
+            int maxFileId = this.sparseFiles[this.present - 1];
+            if (this.present * 2 > maxFileId + 1 && this.present > INITIAL_CAPACITY) {
+                this.toDense(maxFileId + 1);
+            }
+        }
+
+        private void clear(int fileId) {
+            int previous = this.valueId(fileId);
+            if (previous == ABSENT) {
+                return;
+            }
+            this.unlink(fileId, previous);
+
+            if (this.dense != null) {
+                if (fileId < this.dense.length && this.dense[fileId] != ABSENT) {
+                    this.dense[fileId] = ABSENT;
+                    this.present--;
+                }
+                return;
+            }
+
+            int index = Arrays.binarySearch(this.sparseFiles, 0, this.present, fileId);
+            if (index >= 0) {
+                System.arraycopy(this.sparseFiles, index + 1, this.sparseFiles, index, this.present - index - 1);
+                System.arraycopy(this.sparseValues, index + 1, this.sparseValues, index, this.present - index - 1);
+                this.present--;
+            }
+        }
+
+        private void link(int fileId, int valueId) {
+            IntList posting = this.postings.get(valueId);
+            if (posting.size == 0) {
+                this.distinct++;
+            }
+            posting.insertSorted(fileId);
+        }
+
+        private void unlink(int fileId, int valueId) {
+            IntList posting = this.postings.get(valueId);
+            posting.removeSorted(fileId);
+            if (posting.size == 0) {
+                this.distinct--;
+            }
+        }
+
+        private void toDense(int minCapacity) {
+            this.dense = new int[Math.max(minCapacity, INITIAL_CAPACITY)];
+            Arrays.fill(this.dense, ABSENT);
+            for (int i = 0; i < this.present; i++) {
+                this.dense[this.sparseFiles[i]] = this.sparseValues[i];
+            }
+            this.sparseFiles = null;
+            this.sparseValues = null;
+        }
+
+        private void ensureDenseCapacity(int minCapacity) {
+            if (minCapacity <= this.dense.length) {
+                return;
+            }
+
+            int oldLength = this.dense.length;
+            this.dense = Arrays.copyOf(this.dense, Math.max(minCapacity, oldLength * 2));
+            Arrays.fill(this.dense, oldLength, this.dense.length, ABSENT);
+        }
+    }
+
+    private static final class IntList {
+
+        private int[] elements = new int[2];
+        private int size;
+
+        private void add(int value) {
+            if (this.size == this.elements.length) {
+                this.elements = Arrays.copyOf(this.elements, this.size * 2);
+            }
+            this.elements[this.size++] = value;
+        }
+
+        private void insertSorted(int value) {
+            if (this.size == 0 || this.elements[this.size - 1] < value) {
+                this.add(value);
+                return;
+            }
+
+            int index = Arrays.binarySearch(this.elements, 0, this.size, value);
+            if (index >= 0) {
+                return;
+            }
+
+            int insertAt = -index - 1;
+            this.add(0);
+            System.arraycopy(this.elements, insertAt, this.elements, insertAt + 1, this.size - insertAt - 1);
+            this.elements[insertAt] = value;
+        }
+
+        private void removeSorted(int value) {
+            int index = Arrays.binarySearch(this.elements, 0, this.size, value);
+            if (index >= 0) {
+                System.arraycopy(this.elements, index + 1, this.elements, index, this.size - index - 1);
+                this.size--;
+            }
+        }
+
+        private int[] toArray() {
+            return Arrays.copyOf(this.elements, this.size);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package de.tjorven.algorithm;
+
+import de.tjorven.metrics.MoveEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+public class MoveExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(MoveExecutor.class);
+
+    private final MoveOptions options;
+    private final Set<Path> knownDirectories = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger directoriesCreated = new AtomicInteger();
+    private final Map<Path, Optional<FileStore>> fileStores = new ConcurrentHashMap<>();
+
+    public MoveExecutor(MoveOptions options, Path rootPath) {
+        this.options = options;
+        this.knownDirectories.add(rootPath.toAbsolutePath().normalize());
+    }
+
+    public MoveStats execute(Collection<RecursiveSorter.MoveHistory> moves, Consumer<RecursiveSorter.MoveHistory> onMoved) throws IOException {
+        return this.execute(moves, onMoved, MoveProgressListener.NONE);
+    }
+
+    public MoveStats execute(Collection<RecursiveSorter.MoveHistory> moves, Consumer<RecursiveSorter.MoveHistory> onMoved,
+                             MoveProgressListener progressListener) throws IOException {
+        long start = System.nanoTime();
+        Map<Path, List<RecursiveSorter.MoveHistory>> byDirectory = new LinkedHashMap<>();
+        for (RecursiveSorter.MoveHistory move : moves) {
+            byDirectory.computeIfAbsent(move.target().getParent(), dir -> new ArrayList<>()).add(move);
+        }
+
+        StageLimits limits = new StageLimits(this.options.getParallelism(), 1, this.options.getMaxInFlight());
+        ExecutorService pool = Executors.newFixedThreadPool(limits.max(), runnable -> {
+            Thread thread = new Thread(runnable, "file-mover");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Cross-volume copies are bounded separately: a handful of sequential streams keeps both disks busy,
+        // while the full move parallelism would only make them seek. They queue on their own threads so that
+        // waiting copies never hold a mover thread or a move permit that a same-volume rename could use.
+        ExecutorService transferPool = Executors.newFixedThreadPool(Math.max(1, this.options.getMaxParallelTransfers()), runnable -> {
+            Thread thread = new Thread(runnable, "file-transfer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Queue<Future<?>> pendingTransfers = new ConcurrentLinkedQueue<>();
+        AdaptiveLimiter inFlight = new AdaptiveLimiter("move", limits);
+        Queue<IOException> failures = new ConcurrentLinkedQueue<>();
+        AtomicInteger moved = new AtomicInteger();
+        AtomicInteger skipped = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicInteger transferred = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        int total = moves.size();
+
+        try {
+            this.runBounded(pool, inFlight, byDirectory.keySet(), directory -> {
+                try {
+                    this.ensureDirectory(directory);
+                } catch (IOException e) {
+                    failures.add(e);
+                }
+            });
+
+            // A directory that could not be created fails every move into it, once per file.
+            List<RecursiveSorter.MoveHistory> ready = new ArrayList<>();
+            byDirectory.forEach((directory, directoryMoves) -> {
+                if (this.knownDirectories.contains(directory.toAbsolutePath().normalize())) {
+                    ready.addAll(directoryMoves);
+                } else {
+                    failed.addAndGet(directoryMoves.size());
+                    progressListener.onProgress(completed.addAndGet(directoryMoves.size()), total);
+                }
+            });
+
+            Consumer<RecursiveSorter.MoveHistory> relocate = move -> {
+                MoveEvent event = new MoveEvent();
+                if (event.isEnabled()) {
+                    describe(event, move.source());
+                }
+                event.begin();
+                String outcome = "failed";
+                try {
+                    if (this.isSameVolume(move.source().getParent(), move.target().getParent())) {
+                        this.rename(move);
+                        outcome = "moved";
+                    } else {
+                        FileTransfer.transfer(move.source(), move.target(), this.options.isReplaceExisting(), this.options.isVerifyTransfers());
+                        outcome = "transferred";
+                        transferred.incrementAndGet();
+                    }
+                    moved.incrementAndGet();
+                    onMoved.accept(move);
+                } catch (NoSuchFileException e) {
+                    outcome = "skipped";
+                    skipped.incrementAndGet();
+                } catch (IOException e) {
+                    failed.incrementAndGet();
+                    failures.add(e);
+                } finally {
+                    event.end();
+                    if (event.shouldCommit()) {
+                        event.source = move.source().toString();
+                        event.target = move.target().toString();
+                        event.outcome = outcome;
+                        event.commit();
+                    }
+                    progressListener.onProgress(completed.incrementAndGet(), total);
+                }
+            };
+
+            this.runBounded(pool, inFlight, ready, move -> {
+                if (this.isSameVolume(move.source().getParent(), move.target().getParent())) {
+                    relocate.accept(move);
+                } else {
+                    pendingTransfers.add(transferPool.submit(() -> relocate.accept(move)));
+                }
+            });
+            this.await(pendingTransfers);
+        } finally {
+            pool.shutdown();
+            transferPool.shutdown();
+        }
+
+        MoveStats stats = new MoveStats(moved.get(), skipped.get(), failed.get(), this.directoriesCreated.get(),
+                transferred.get(), 0, Duration.ofNanos(System.nanoTime() - start));
+        logger.info("Moved {} files in {} ms ({} files/s, {} directories created, {} moves in flight at the end)",
+                stats.moved(), stats.elapsed().toMillis(), String.format("%.1f", stats.filesPerSecond()), stats.directoriesCreated(),
+                inFlight.getLimit());
+
+        if (!failures.isEmpty()) {
+            IOException exception = new IOException(failed.get() + " files could not be moved: " + failures.peek().getMessage());
+            failures.forEach(exception::addSuppressed);
+            throw exception;
+        }
+        return stats;
+    }
+
+    private void rename(RecursiveSorter.MoveHistory move) throws IOException {
+        if (this.options.isReplaceExisting()) {
+            Files.move(move.source(), move.target(), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.move(move.source(), move.target());
+        }
+    }
+
+    private boolean isSameVolume(Path sourceDirectory, Path targetDirectory) {
+        Optional<FileStore> source = this.fileStore(sourceDirectory);
+        Optional<FileStore> target = this.fileStore(targetDirectory);
+        // If either side cannot be resolved, Files.move still works; it just falls back to its own copy.
+        return source.isEmpty() || target.isEmpty() || source.get().equals(target.get());
+    }
+
+    private Optional<FileStore> fileStore(Path directory) {
+        if (directory == null) {
+            return Optional.empty();
+        }
+        return this.fileStores.computeIfAbsent(directory, dir -> {
+            try {
+                return Optional.of(Files.getFileStore(dir));
+            } catch (IOException e) {
+                return Optional.empty();
+            }
+        });
+    }
+
+    private static void describe(MoveEvent event, Path source) {
+        try {
+            event.bytes = Files.size(source);
+            event.mimeType = Files.probeContentType(source);
+        } catch (IOException ignored) {
+        }
+    }
+
+    private <T> void runBounded(ExecutorService pool, AdaptiveLimiter inFlight, Collection<T> items, Consumer<T> action) throws IOException {
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (T item : items) {
+                AdaptiveLimiter.Permit permit = inFlight.acquire();
+                futures.add(pool.submit(() -> {
+                    try (permit) {
+                        action.accept(item);
+                    }
+                }));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while moving files", e);
+        }
+        this.await(futures);
+    }
+
+    private void await(Collection<Future<?>> futures) throws IOException {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while moving files", e);
+        } catch (ExecutionException e) {
+            throw new IOException("File operation failed", e.getCause());
+        }
+    }
+
+    private void ensureDirectory(Path directory) throws IOException {
+        Path normalized = directory.toAbsolutePath().normalize();
+        if (this.knownDirectories.contains(normalized)) {
+            return;
+        }
+
+        Path parent = normalized.getParent();
+        if (parent != null) {
+            this.ensureDirectory(parent);
+        }
+
+        try {
+            Files.createDirectory(normalized);
+            this.directoriesCreated.incrementAndGet();
+        } catch (FileAlreadyExistsException e) {
+            if (!Files.isDirectory(normalized)) {
+                throw e;
+            }
+        }
+        this.knownDirectories.add(normalized);
+    }
+}
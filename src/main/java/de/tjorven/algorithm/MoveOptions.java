@@ -0,0 +1,38 @@
+package de.tjorven.algorithm;
+
+import lombok.Builder;
+import lombok.Getter;
+
+@Getter
+@Builder(toBuilder = true)
+public class MoveOptions {
+
+    @Builder.Default
+    private final int parallelism = 4;
+    @Builder.Default
+    private final int maxInFlight = 8;
+    @Builder.Default
+    private final boolean replaceExisting = false;
+    @Builder.Default
+    private final int maxParallelTransfers = 2;
+    @Builder.Default
+    private final boolean verifyTransfers = false;
+
+    public static MoveOptions forLocalDisk() {
+        return forStorage(StorageProfile.SSD);
+    }
+
+    public static MoveOptions forNetworkMount() {
+        return forStorage(StorageProfile.NETWORK);
+    }
+
+    // parallelism is where the move stage starts, maxInFlight how far it may grow while throughput keeps up.
+    public static MoveOptions forStorage(StorageProfile storage) {
+        StageLimits move = storage.getMove();
+        return MoveOptions.builder()
+                .parallelism(move.initial())
+                .maxInFlight(move.max())
+                .maxParallelTransfers(storage == StorageProfile.NETWORK ? 4 : 2)
+                .build();
+    }
+}
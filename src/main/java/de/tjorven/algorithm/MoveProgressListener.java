@@ -0,0 +1,10 @@
+package de.tjorven.algorithm;
+
+@FunctionalInterface
+public interface MoveProgressListener {
+
+    MoveProgressListener NONE = (completed, total) -> {
+    };
+
+    void onProgress(int completed, int total);
+}
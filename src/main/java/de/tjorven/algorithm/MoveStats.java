@@ -0,0 +1,15 @@
+package de.tjorven.algorithm;
+
+import java.time.Duration;
+
+public record MoveStats(int moved, int skipped, int failed, int directoriesCreated, int transferred, int linked, Duration elapsed) {
+
+    public double filesPerSecond() {
+        double seconds = Math.max(1e-3, this.elapsed.toNanos() / 1e9);
+        return this.moved / seconds;
+    }
+
+    public MoveStats withLinked(int linked) {
+        return new MoveStats(this.moved, this.skipped, this.failed, this.directoriesCreated, this.transferred, linked, this.elapsed);
+    }
+}
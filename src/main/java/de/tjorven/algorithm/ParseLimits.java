@@ -0,0 +1,26 @@
+package de.tjorven.algorithm;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+
+@Getter
+@Builder(toBuilder = true)
+public class ParseLimits {
+
+    @Builder.Default
+    private final Duration timeout = Duration.ofSeconds(30);
+    @Builder.Default
+    private final long maxBytes = 512L * 1024 * 1024;
+    @Builder.Default
+    private final int maxEmbeddedDocuments = 100;
+
+    public static ParseLimits defaults() {
+        return ParseLimits.builder().build();
+    }
+
+    String signature() {
+        return this.timeout.toMillis() + "/" + this.maxBytes + "/" + this.maxEmbeddedDocuments;
+    }
+}
@@ -0,0 +1,17 @@
+package de.tjorven.algorithm;
+
+import java.io.IOException;
+
+public class ParseSkippedException extends IOException {
+
+    private final SkipReason reason;
+
+    public ParseSkippedException(SkipReason reason, Throwable cause) {
+        super(reason.getDescription(), cause);
+        this.reason = reason;
+    }
+
+    public SkipReason getReason() {
+        return this.reason;
+    }
+}
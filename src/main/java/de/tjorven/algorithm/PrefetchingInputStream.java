@@ -0,0 +1,99 @@
+package de.tjorven.algorithm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Reads a file in large chunks, each under a permit of the read stage. The first chunk is read as soon as the
+// stream is opened, so the parser that follows starts on bytes that are already in memory.
+class PrefetchingInputStream extends InputStream {
+
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    private final FileChannel channel;
+    private final AdaptiveLimiter reads;
+    private final ByteBuffer buffer;
+    private boolean endOfFile;
+
+    PrefetchingInputStream(Path file, long size, AdaptiveLimiter reads) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.reads = reads;
+        this.buffer = ByteBuffer.allocate((int) Math.max(1, Math.min(CHUNK_SIZE, size)));
+        this.buffer.limit(0);
+        try {
+            this.fill();
+        } catch (IOException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!this.buffer.hasRemaining() && !this.fill()) {
+            return -1;
+        }
+        return this.buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!this.buffer.hasRemaining() && !this.fill()) {
+            return -1;
+        }
+        int count = Math.min(len, this.buffer.remaining());
+        this.buffer.get(b, off, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        int buffered = (int) Math.min(n, this.buffer.remaining());
+        this.buffer.position(this.buffer.position() + buffered);
+        long rest = Math.min(n - buffered, Math.max(0, this.channel.size() - this.channel.position()));
+        this.channel.position(this.channel.position() + rest);
+        return buffered + rest;
+    }
+
+    @Override
+    public int available() {
+        return this.buffer.remaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    private boolean fill() throws IOException {
+        if (this.endOfFile) {
+            return false;
+        }
+
+        this.buffer.clear();
+        try (AdaptiveLimiter.Permit ignored = this.reads.acquire()) {
+            while (this.buffer.hasRemaining()) {
+                if (this.channel.read(this.buffer) < 0) {
+                    this.endOfFile = true;
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to read");
+        } finally {
+            this.buffer.flip();
+        }
+        return this.buffer.hasRemaining();
+    }
+}
@@ -0,0 +1,61 @@
+package de.tjorven.algorithm;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+class ProgressTracker {
+
+    private final long startNanos = System.nanoTime();
+
+    private final LongAdder filesDiscovered = new LongAdder();
+    private final LongAdder filesDone = new LongAdder();
+    private final LongAdder bytesDiscovered = new LongAdder();
+    private final LongAdder bytesDone = new LongAdder();
+    private volatile String currentFile;
+    private volatile Duration firstFileAfter;
+    private volatile Duration firstFileSinceLaunch;
+
+    void discovered(long bytes) {
+        this.filesDiscovered.increment();
+        this.bytesDiscovered.add(bytes);
+    }
+
+    void started(String fileKey) {
+        this.currentFile = fileKey;
+    }
+
+    void done(long bytes) {
+        this.filesDone.increment();
+        this.bytesDone.add(bytes);
+        if (this.firstFileAfter == null) {
+            this.firstFileDone();
+        }
+    }
+
+    // Includes class loading and Tika start-up, which is what a cold start costs before anything is visible.
+    private synchronized void firstFileDone() {
+        if (this.firstFileAfter == null) {
+            this.firstFileSinceLaunch = Duration.ofMillis(ManagementFactory.getRuntimeMXBean().getUptime());
+            this.firstFileAfter = Duration.ofNanos(System.nanoTime() - this.startNanos);
+        }
+    }
+
+    AnalysisProgress snapshot(boolean finished) {
+        double seconds = Math.max(1e-3, (System.nanoTime() - this.startNanos) / 1e9);
+        long files = this.filesDone.sum();
+        long bytes = this.bytesDone.sum();
+        long totalBytes = this.bytesDiscovered.sum();
+
+        double filesPerSecond = files / seconds;
+        double bytesPerSecond = bytes / seconds;
+
+        Duration eta = Duration.ZERO;
+        if (!finished && bytesPerSecond > 0) {
+            eta = Duration.ofMillis((long) ((totalBytes - bytes) / bytesPerSecond * 1000));
+        }
+
+        return new AnalysisProgress(this.filesDiscovered.sum(), files, totalBytes, bytes,
+                filesPerSecond, bytesPerSecond, eta, this.currentFile, this.firstFileAfter, this.firstFileSinceLaunch, finished);
+    }
+}
@@ -2,101 +2,258 @@ package de.tjorven.algorithm;
 
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.stream.Stream;
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.IntStream;
 
 @Getter
 @RequiredArgsConstructor
 public class RecursiveSorter {
 
+    private static final Logger logger = LoggerFactory.getLogger(RecursiveSorter.class);
+
     private final String selectedFolderPath;
-    private final Map<String, Map<String, String>> fileMetadataMap;
+    private final MetadataStore metadataStore;
+
+    private final List<MoveHistory> lastOperationHistory = Collections.synchronizedList(new ArrayList<>());
+
+    private Path lastJournal;
+
+    @Setter
+    private MoveOptions moveOptions = MoveOptions.forLocalDisk();
+    @Setter
+    private MoveProgressListener progressListener = MoveProgressListener.NONE;
+    @Setter
+    private ConflictPolicy conflictPolicy = ConflictPolicy.RENAME;
+    @Setter
+    private DuplicatePolicy duplicatePolicy = DuplicatePolicy.KEEP;
+    @Setter
+    private Path targetRoot;
 
-    private final List<MoveHistory> lastOperationHistory = new ArrayList<>();
+    public MoveStats runFilter(Path rootPath, List<String> selectedAttributes, List<String> allowedExtensions) throws IOException {
+        return this.execute(this.plan(rootPath, selectedAttributes, allowedExtensions));
+    }
+
+    public MoveStats sortFiles(Path rootPath, List<String> selectedAttributes, Collection<Path> files) throws IOException {
+        return this.execute(this.plan(rootPath, selectedAttributes, files));
+    }
 
-    public void runFilter(Path rootPath, List<String> selectedAttributes, List<String> allowedExtensions) throws IOException {
+    public MoveStats execute(SortPlan plan) throws IOException {
         this.lastOperationHistory.clear();
-        List<Path> filesInFolder;
-
-        try (Stream<Path> stream = Files.list(rootPath)) {
-            filesInFolder = stream.filter(Files::isRegularFile)
-                    .filter(path -> {
-                        if (allowedExtensions == null || allowedExtensions.isEmpty()) {
-                            return true;
-                        }
-                        String name = path.getFileName().toString().toLowerCase();
-                        return allowedExtensions.stream().anyMatch(ext -> name.endsWith(ext.toLowerCase()));
-                    })
-                    .toList();
+
+        List<MoveHistory> moves = plan.moves();
+        MoveOptions options = this.moveOptions.toBuilder()
+                .replaceExisting(plan.getConflictPolicy() == ConflictPolicy.OVERWRITE)
+                .build();
+        try (SortJournal journal = SortJournal.create(plan.getRootPath(), plan.getTargetRoot(), plan.getAttributes(),
+                plan.getConflictPolicy(), moves)) {
+            this.lastJournal = journal.getFile();
+            MoveExecutor executor = new MoveExecutor(options, plan.getTargetRoot());
+            MoveStats stats = executor.execute(moves, move -> {
+                this.lastOperationHistory.add(move);
+                this.journalDone(journal, move);
+            }, this.progressListener);
+            journal.markComplete();
+            if (plan.getDuplicatePolicy() == DuplicatePolicy.LINK) {
+                stats = stats.withLinked(this.linkDuplicates(plan.getDuplicates()));
+            }
+            return stats;
         }
+    }
 
-        for (Path filePath : filesInFolder) {
-            Map<String, String> fileMeta = this.fileMetadataMap.get(filePath.getFileName().toString());
-            if (fileMeta == null) {
+    // Copies are moved like every other file first, so the journal can still revert them, and then swapped for a
+    // hard link to the kept file. Where links are not possible, such as across volumes or on FAT, the copy stays.
+    private int linkDuplicates(List<SortPlan.Duplicate> duplicates) {
+        int linked = 0;
+        for (SortPlan.Duplicate duplicate : duplicates) {
+            Path target = duplicate.target();
+            if (target == null || !Files.isRegularFile(target) || !Files.isRegularFile(duplicate.original())) {
                 continue;
             }
 
-            Path currentTargetDir = rootPath;
-            for (String attr : selectedAttributes) {
-                String rawValue = fileMeta.get(attr);
-                String folderName = (rawValue == null || rawValue.isBlank()) ? "Unknown_" + attr : rawValue.replaceAll("[\\\\/:*?\"<>|]", "_").trim();
-                currentTargetDir = currentTargetDir.resolve(folderName);
+            Path link = target.resolveSibling("." + target.getFileName() + ".link");
+            try {
+                Files.createLink(link, duplicate.original());
+                Files.move(link, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                linked++;
+            } catch (IOException | UnsupportedOperationException e) {
+                logger.debug("Keeping {} as a copy of {}", target, duplicate.original(), e);
+                try {
+                    Files.deleteIfExists(link);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        return linked;
+    }
+
+    public SortPlan plan(Path rootPath, List<String> selectedAttributes, List<String> allowedExtensions) {
+        int[] files = IntStream.of(this.metadataStore.allFiles())
+                .filter(fileId -> hasAllowedExtension(Paths.get(this.metadataStore.fileKey(fileId)), allowedExtensions))
+                .toArray();
+        return SortPlan.compile(rootPath, this.targetRoot(rootPath), this.metadataStore, selectedAttributes, files,
+                this.conflictPolicy, this.duplicatePolicy);
+    }
+
+    public SortPlan plan(Path rootPath, List<String> selectedAttributes, Collection<Path> files) {
+        int[] fileIds = files.stream()
+                .mapToInt(file -> this.metadataStore.fileId(rootPath.relativize(file).toString()))
+                .filter(fileId -> fileId >= 0)
+                .toArray();
+        return SortPlan.compile(rootPath, this.targetRoot(rootPath), this.metadataStore, selectedAttributes, fileIds,
+                this.conflictPolicy, this.duplicatePolicy);
+    }
+
+    private Path targetRoot(Path rootPath) {
+        return this.targetRoot != null ? this.targetRoot.toAbsolutePath().normalize() : rootPath;
+    }
+
+    public static boolean hasAllowedExtension(Path file, List<String> allowedExtensions) {
+        if (allowedExtensions == null || allowedExtensions.isEmpty()) {
+            return true;
+        }
+        String name = file.getFileName().toString().toLowerCase();
+        return allowedExtensions.stream().anyMatch(ext -> name.endsWith(ext.toLowerCase()));
+    }
+
+    public MoveStats resume(SortJournal.Replay replay) throws IOException {
+        this.lastOperationHistory.clear();
+        this.lastJournal = replay.file();
+
+        try (SortJournal journal = SortJournal.append(replay)) {
+            for (int i = replay.done().nextSetBit(0); i >= 0 && i < replay.moves().size(); i = replay.done().nextSetBit(i + 1)) {
+                this.lastOperationHistory.add(replay.moves().get(i));
             }
 
-            if (!Files.exists(currentTargetDir)) {
-                Files.createDirectories(currentTargetDir);
+            List<MoveHistory> pending = new ArrayList<>();
+            for (MoveHistory move : replay.pendingMoves()) {
+                if (Files.exists(move.source()) && !this.finishTransfer(move)) {
+                    pending.add(move);
+                } else if (Files.exists(move.target())) {
+                    this.lastOperationHistory.add(move);
+                    journal.markDone(move);
+                }
             }
 
-            Path targetFile = currentTargetDir.resolve(filePath.getFileName());
-            Files.move(filePath, targetFile, StandardCopyOption.REPLACE_EXISTING);
-            this.lastOperationHistory.add(new MoveHistory(filePath, targetFile));
+            // The sort is resumed under the policy it was planned with, so planned overwrites still go through.
+            MoveOptions options = this.moveOptions.toBuilder()
+                    .replaceExisting(replay.conflictPolicy() == ConflictPolicy.OVERWRITE)
+                    .build();
+            MoveExecutor executor = new MoveExecutor(options, replay.targetRoot());
+            MoveStats stats = executor.execute(pending, move -> {
+                this.lastOperationHistory.add(move);
+                this.journalDone(journal, move);
+            }, this.progressListener);
+            journal.markComplete();
+            return stats;
+        }
+    }
+
+    // A crash between a cross-volume copy and the removal of its source leaves both files behind. If the target is a
+    // complete copy of the source, only the delete is left to do.
+    private boolean finishTransfer(MoveHistory move) {
+        try {
+            if (!Files.exists(move.target()) || Files.isSameFile(move.source(), move.target())
+                    || !FileTransfer.sameContent(move.source(), move.target())) {
+                return false;
+            }
+            Files.delete(move.source());
+            return true;
+        } catch (IOException e) {
+            logger.warn("Could not finish interrupted transfer: {}", move, e);
+            return false;
         }
     }
 
-    public void revertSort() throws IOException {
+    public MoveStats revertSort() throws IOException {
         if (this.lastOperationHistory.isEmpty()) {
-            return;
+            return new MoveStats(0, 0, 0, 0, 0, 0, Duration.ZERO);
         }
 
-        for (MoveHistory move : this.lastOperationHistory) {
-            if (!Files.exists(move.target())) {
-                continue;
+        SortJournal.Replay replay = this.lastJournal != null ? SortJournal.read(this.lastJournal) : null;
+        Path sortedRoot = replay != null ? replay.targetRoot() : Paths.get(this.selectedFolderPath);
+        MoveStats stats = this.revertMoves(this.lastOperationHistory, sortedRoot);
+        if (replay != null) {
+            try (SortJournal journal = SortJournal.append(replay)) {
+                journal.markReverted();
             }
+        }
+        this.lastOperationHistory.clear();
+        return stats;
+    }
 
-            Files.move(move.target(), move.source(), StandardCopyOption.REPLACE_EXISTING);
+    public MoveStats revert(SortJournal.Replay replay) throws IOException {
+        MoveStats stats = this.revertMoves(replay.moves(), replay.targetRoot());
+        try (SortJournal journal = SortJournal.append(replay)) {
+            journal.markReverted();
         }
 
-        this.cleanUpEmptyFolders();
-        this.lastOperationHistory.clear();
+        if (replay.file().equals(this.lastJournal)) {
+            this.lastOperationHistory.clear();
+        }
+        return stats;
+    }
+
+    private void journalDone(SortJournal journal, MoveHistory move) {
+        try {
+            journal.markDone(move);
+        } catch (IOException e) {
+            logger.error("Could not journal move: {}", move, e);
+        }
+    }
+
+    private MoveStats revertMoves(Collection<MoveHistory> moves, Path rootPath) throws IOException {
+        List<MoveHistory> reversed = new ArrayList<>(moves.size());
+        for (MoveHistory move : new ArrayList<>(moves)) {
+            reversed.add(new MoveHistory(move.target(), move.source()));
+        }
+
+        MoveExecutor executor = new MoveExecutor(this.moveOptions, rootPath);
+        try {
+            return executor.execute(reversed, move -> {
+            }, this.progressListener);
+        } finally {
+            this.cleanUpEmptyFolders(reversed, rootPath);
+        }
     }
 
-    private void cleanUpEmptyFolders() {
-        this.lastOperationHistory.stream()
-                .map(move -> move.target().getParent())
-                .distinct()
-                .forEach(dir -> {
-                    try {
-                        while (dir != null && !dir.equals(Paths.get(this.selectedFolderPath))) {
-                            try (Stream<Path> s = Files.list(dir)) {
-                                if (s.findAny().isPresent()) {
-                                    break;
-                                }
-
-                                Files.delete(dir);
-                                dir = dir.getParent();
-                            }
-                        }
-                    } catch (IOException ignored) {
-                    }
-                });
+    private void cleanUpEmptyFolders(Collection<MoveHistory> revertedMoves, Path rootPath) {
+        Path root = rootPath.toAbsolutePath().normalize();
+        Set<Path> candidates = new HashSet<>();
+        for (MoveHistory move : revertedMoves) {
+            Path dir = move.source().toAbsolutePath().normalize().getParent();
+            while (dir != null && !dir.equals(root) && dir.startsWith(root) && candidates.add(dir)) {
+                dir = dir.getParent();
+            }
+        }
+
+        List<Path> deepestFirst = new ArrayList<>(candidates);
+        deepestFirst.sort(Comparator.comparingInt(Path::getNameCount).reversed());
+
+        Set<Path> occupied = new HashSet<>();
+        for (Path dir : deepestFirst) {
+            if (occupied.contains(dir)) {
+                occupied.add(dir.getParent());
+                continue;
+            }
+
+            try {
+                Files.delete(dir);
+            } catch (NoSuchFileException ignored) {
+            } catch (IOException e) {
+                occupied.add(dir.getParent());
+            }
+        }
     }
 
     public record MoveHistory(Path source, Path target) {
@@ -0,0 +1,60 @@
+package de.tjorven.algorithm;
+
+import org.apache.tika.metadata.Metadata;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.List;
+
+// Discards the document body and aborts the parse as soon as every required key is in the metadata.
+class RequiredMetadataHandler extends DefaultHandler {
+
+    private final Metadata metadata;
+    private final List<String> required;
+
+    RequiredMetadataHandler(Metadata metadata, List<String> required) {
+        this.metadata = metadata;
+        this.required = required;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+        this.checkComplete();
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        this.checkComplete();
+    }
+
+    private void checkComplete() throws SAXException {
+        for (String key : this.required) {
+            if (this.metadata.get(key) == null) {
+                return;
+            }
+        }
+        throw new MetadataComplete();
+    }
+
+    static boolean isComplete(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MetadataComplete) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class MetadataComplete extends SAXException {
+
+        private MetadataComplete() {
+            super("All required metadata found");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package de.tjorven.algorithm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+// Splits the files that need parsing into shards and parses each one in a worker JVM. Every worker has a small
+// heap of its own, so no single heap grows with the tree, and a worker that dies costs only the files it had not
+// written to a segment yet. Files it was parsing at the time are retried alone, and skipped if they kill that
+// worker too.
+class ShardCoordinator {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardCoordinator.class);
+
+    // More shards than workers, so a worker that finishes early picks up another one instead of idling.
+    private static final int SHARDS_PER_WORKER = 4;
+    // Starting a parse costs about as much as reading this many bytes, so many small files weigh more than their size.
+    private static final long FILE_WEIGHT = 64 * 1024;
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final Path rootPath;
+    private final AnalysisOptions options;
+    private final Set<Long> sharedSizes;
+    private final Listener listener;
+    private final Set<Process> processes = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger shardIds = new AtomicInteger();
+    private volatile boolean cancelled;
+
+    ShardCoordinator(Path rootPath, AnalysisOptions options, Set<Long> sharedSizes, Listener listener) {
+        this.rootPath = rootPath;
+        this.options = options;
+        this.sharedSizes = sharedSizes;
+        this.listener = listener;
+    }
+
+    void run(List<FileStamp> files) throws IOException {
+        int workers = Math.max(1, this.options.getWorkers());
+        AnalysisOptions workerOptions = this.workerOptions(workers);
+        Path directory = Files.createTempDirectory("file-sorter-shards");
+        ExecutorService pool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "shard-coordinator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletionService<List<Shard>> completion = new ExecutorCompletionService<>(pool);
+
+        try {
+            int running = 0;
+            for (Shard shard : this.plan(files, workers)) {
+                completion.submit(() -> this.runShard(shard, workerOptions, directory));
+                running++;
+            }
+            while (running > 0) {
+                List<Shard> retries = completion.take().get();
+                running--;
+                for (Shard retry : retries) {
+                    completion.submit(() -> this.runShard(retry, workerOptions, directory));
+                    running++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.cancel();
+            throw new InterruptedIOException("Interrupted while waiting for workers");
+        } catch (ExecutionException e) {
+            this.cancel();
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+            deleteQuietly(directory);
+        }
+    }
+
+    void cancel() {
+        this.cancelled = true;
+        for (Process process : this.processes) {
+            process.destroyForcibly();
+        }
+    }
+
+    // Contiguous runs of file keys, so each worker reads neighbouring files instead of jumping across the tree.
+    private List<Shard> plan(List<FileStamp> files, int workers) {
+        List<FileStamp> sorted = new ArrayList<>(files);
+        sorted.sort(Comparator.comparing(FileStamp::fileKey));
+        int shardCount = Math.max(1, Math.min(sorted.size(), workers * SHARDS_PER_WORKER));
+        long totalWeight = sorted.stream().mapToLong(ShardCoordinator::weight).sum();
+        long shardWeight = Math.max(1, totalWeight / shardCount);
+
+        List<Shard> shards = new ArrayList<>();
+        List<FileStamp> current = new ArrayList<>();
+        long weight = 0;
+        for (FileStamp stamp : sorted) {
+            current.add(stamp);
+            weight += weight(stamp);
+            if (weight >= shardWeight) {
+                shards.add(new Shard(this.shardIds.getAndIncrement(), current, 0, false));
+                current = new ArrayList<>();
+                weight = 0;
+            }
+        }
+        if (!current.isEmpty()) {
+            shards.add(new Shard(this.shardIds.getAndIncrement(), current, 0, false));
+        }
+        return shards;
+    }
+
+    private static long weight(FileStamp stamp) {
+        return stamp.size() + FILE_WEIGHT;
+    }
+
+    // The limits are meant for the whole machine, so each worker gets its share of them.
+    private AnalysisOptions workerOptions(int workers) {
+        return this.options.toBuilder()
+                .readStage(share(this.options.getEffectiveReadStage(), workers))
+                .parseStage(share(this.options.getEffectiveParseStage(), workers))
+                .workers(0)
+                .collectMetrics(false)
+                .build();
+    }
+
+    private static StageLimits share(StageLimits limits, int workers) {
+        return new StageLimits(limits.initial() / workers, limits.min(), limits.max() / workers);
+    }
+
+    private List<Shard> runShard(Shard shard, AnalysisOptions workerOptions, Path directory) throws IOException {
+        if (this.cancelled) {
+            return List.of();
+        }
+
+        Path manifest = directory.resolve("shard-" + shard.id() + ".manifest");
+        new ShardManifest(shard.id(), this.rootPath, directory, workerOptions, this.sharedSizes, shard.files()).write(manifest);
+
+        Map<String, FileStamp> remaining = new HashMap<>();
+        for (FileStamp stamp : shard.files()) {
+            remaining.put(stamp.fileKey(), stamp);
+        }
+        Set<String> inFlight = new HashSet<>();
+        int exitCode;
+
+        Process process = this.start(manifest);
+        this.processes.add(process);
+        try (BufferedReader reader = process.inputReader(StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                this.handle(line, shard, directory, remaining, inFlight);
+            }
+            exitCode = process.waitFor();
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+            return List.of();
+        } finally {
+            this.processes.remove(process);
+            Files.deleteIfExists(manifest);
+        }
+
+        if (remaining.isEmpty() || this.cancelled) {
+            return List.of();
+        }
+        return this.retry(shard, remaining, inFlight, exitCode);
+    }
+
+    private Process start(Path manifest) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-Xmx" + this.options.getWorkerHeapMegabytes() + "m");
+        // A parser that leaks ends its worker quickly instead of leaving it to crawl through garbage collections.
+        command.add("-XX:+ExitOnOutOfMemoryError");
+        ManagementFactory.getRuntimeMXBean().getInputArguments().stream()
+                .filter(argument -> argument.startsWith("-XX:SharedArchiveFile="))
+                .forEach(command::add);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ShardWorker.class.getName());
+        command.add(manifest.toString());
+        return new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+
+    private void handle(String line, Shard shard, Path directory, Map<String, FileStamp> remaining, Set<String> inFlight) {
+        int separator = line.indexOf(' ');
+        if (separator < 0) {
+            return;
+        }
+
+        String argument = line.substring(separator + 1);
+        switch (line.substring(0, separator)) {
+            case ShardWorker.BEGIN -> {
+                FileStamp stamp = file(shard, argument);
+                if (stamp != null) {
+                    inFlight.add(stamp.fileKey());
+                    this.listener.started(stamp);
+                }
+            }
+            case ShardWorker.END -> {
+                FileStamp stamp = file(shard, argument);
+                if (stamp != null) {
+                    inFlight.remove(stamp.fileKey());
+                }
+            }
+            case ShardWorker.SEGMENT -> this.merge(directory.resolve(argument), remaining);
+            default -> {
+                // Anything else on standard output is not part of the protocol, such as messages from the JVM.
+            }
+        }
+    }
+
+    private static FileStamp file(Shard shard, String index) {
+        try {
+            int position = Integer.parseInt(index);
+            return position >= 0 && position < shard.files().size() ? shard.files().get(position) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void merge(Path segment, Map<String, FileStamp> remaining) {
+        try {
+            for (IndexSegment.Entry entry : IndexSegment.read(segment)) {
+                FileStamp stamp = remaining.remove(entry.fileKey());
+                if (stamp != null) {
+                    this.listener.parsed(stamp, entry.metadata());
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Discarding unreadable index segment {}, its files are parsed again", segment, e);
+        } finally {
+            try {
+                Files.deleteIfExists(segment);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private List<Shard> retry(Shard shard, Map<String, FileStamp> remaining, Set<String> inFlight, int exitCode) throws IOException {
+        if (shard.isolated()) {
+            // Alone in its worker and still fatal, so it is the file itself that takes the process down.
+            FileStamp stamp = remaining.values().iterator().next();
+            logger.warn("Worker died again on {} (exit code {}), skipping it", stamp.file(), exitCode);
+            this.listener.crashed(stamp);
+            return List.of();
+        }
+
+        List<FileStamp> suspects = new ArrayList<>();
+        List<FileStamp> rest = new ArrayList<>();
+        for (FileStamp stamp : remaining.values()) {
+            (inFlight.contains(stamp.fileKey()) ? suspects : rest).add(stamp);
+        }
+        // Without a file to blame, the worker itself failed, for example because it could not start.
+        int attempt = suspects.isEmpty() ? shard.attempt() + 1 : shard.attempt();
+        if (attempt >= MAX_ATTEMPTS) {
+            throw new IOException("Worker for shard " + shard.id() + " failed " + attempt + " times (exit code " + exitCode + ")");
+        }
+        logger.warn("Worker for shard {} died (exit code {}), parsing {} files again and {} on their own",
+                shard.id(), exitCode, rest.size(), suspects.size());
+
+        List<Shard> retries = new ArrayList<>();
+        if (!rest.isEmpty()) {
+            rest.sort(Comparator.comparing(FileStamp::fileKey));
+            retries.add(new Shard(this.shardIds.getAndIncrement(), rest, attempt, false));
+        }
+        for (FileStamp suspect : suspects) {
+            retries.add(new Shard(this.shardIds.getAndIncrement(), List.of(suspect), 0, true));
+        }
+        return retries;
+    }
+
+    private static void deleteQuietly(Path directory) {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException ignored) {
+                }
+            });
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            logger.debug("Could not remove {}", directory, e);
+        }
+    }
+
+    interface Listener {
+
+        void started(FileStamp stamp);
+
+        // metadata is null if the worker could not parse the file.
+        void parsed(FileStamp stamp, Map<String, String> metadata);
+
+        void crashed(FileStamp stamp);
+    }
+
+    private record Shard(int id, List<FileStamp> files, int attempt, boolean isolated) {
+    }
+}
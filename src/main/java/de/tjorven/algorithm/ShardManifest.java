@@ -0,0 +1,124 @@
+package de.tjorven.algorithm;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Everything a worker needs for its shard: the files, how to parse them and which sizes occur more than once
+// in the whole tree, since a worker that only sees its own files cannot tell which ones may be duplicates.
+record ShardManifest(int shard, Path rootPath, Path segmentDirectory, AnalysisOptions options, Set<Long> sharedSizes,
+                     List<FileStamp> files) {
+
+    private static final int MAGIC = 0x4653534D;
+    private static final int FORMAT_VERSION = 1;
+
+    void write(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(this.shard);
+            out.writeUTF(this.rootPath.toString());
+            out.writeUTF(this.segmentDirectory.toString());
+
+            out.writeUTF(this.options.getMode().name());
+            out.writeBoolean(this.options.isHeaderFastPath());
+            out.writeBoolean(this.options.isDetectDuplicates());
+            ParseLimits limits = this.options.getLimits();
+            out.writeLong(limits.getTimeout().toMillis());
+            out.writeLong(limits.getMaxBytes());
+            out.writeInt(limits.getMaxEmbeddedDocuments());
+            writeStrings(out, this.options.getRequiredAttributes());
+            writeStrings(out, this.options.getExtensions());
+            writeStage(out, this.options.getEffectiveReadStage());
+            writeStage(out, this.options.getEffectiveParseStage());
+
+            out.writeInt(this.sharedSizes.size());
+            for (long size : this.sharedSizes) {
+                out.writeLong(size);
+            }
+
+            out.writeInt(this.files.size());
+            for (FileStamp stamp : this.files) {
+                out.writeUTF(stamp.fileKey());
+                out.writeUTF(stamp.file().toString());
+                out.writeLong(stamp.size());
+                out.writeLong(stamp.lastModified());
+            }
+        }
+    }
+
+    static ShardManifest read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unsupported shard manifest format: " + file);
+            }
+            int shard = in.readInt();
+            Path rootPath = Paths.get(in.readUTF());
+            Path segmentDirectory = Paths.get(in.readUTF());
+
+            AnalysisMode mode = AnalysisMode.valueOf(in.readUTF());
+            boolean headerFastPath = in.readBoolean();
+            boolean detectDuplicates = in.readBoolean();
+            ParseLimits limits = ParseLimits.builder()
+                    .timeout(Duration.ofMillis(in.readLong()))
+                    .maxBytes(in.readLong())
+                    .maxEmbeddedDocuments(in.readInt())
+                    .build();
+            AnalysisOptions options = AnalysisOptions.builder()
+                    .mode(mode)
+                    .headerFastPath(headerFastPath)
+                    .detectDuplicates(detectDuplicates)
+                    .limits(limits)
+                    .requiredAttributes(readStrings(in))
+                    .extensions(readStrings(in))
+                    .readStage(readStage(in))
+                    .parseStage(readStage(in))
+                    .build();
+
+            int sizeCount = in.readInt();
+            Set<Long> sharedSizes = new HashSet<>(sizeCount * 2);
+            for (int i = 0; i < sizeCount; i++) {
+                sharedSizes.add(in.readLong());
+            }
+
+            int fileCount = in.readInt();
+            List<FileStamp> files = new ArrayList<>(fileCount);
+            for (int i = 0; i < fileCount; i++) {
+                files.add(new FileStamp(in.readUTF(), Paths.get(in.readUTF()), in.readLong(), in.readLong()));
+            }
+            return new ShardManifest(shard, rootPath, segmentDirectory, options, sharedSizes, files);
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(in.readUTF());
+        }
+        return values;
+    }
+
+    private static void writeStage(DataOutputStream out, StageLimits stage) throws IOException {
+        out.writeInt(stage.initial());
+        out.writeInt(stage.min());
+        out.writeInt(stage.max());
+    }
+
+    private static StageLimits readStage(DataInputStream in) throws IOException {
+        return new StageLimits(in.readInt(), in.readInt(), in.readInt());
+    }
+}
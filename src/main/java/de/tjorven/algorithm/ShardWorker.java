@@ -0,0 +1,120 @@
+package de.tjorven.algorithm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Parses one shard in a JVM of its own, so a parser that leaks or crashes takes down only this process.
+// Standard output tells the coordinator what happens: "B <n>" when the n-th file of the manifest is started,
+// "E <n>" when it is done and "S <segment>" once a segment with the files done so far has been written.
+public final class ShardWorker {
+
+    static final String BEGIN = "B";
+    static final String END = "E";
+    static final String SEGMENT = "S";
+
+    private static final int SEGMENT_FILES = 1000;
+    private static final long SEGMENT_NANOS = 2_000_000_000L;
+
+    // Not static: logging must only start once standard output has been handed over, see main.
+    private final Logger logger = LoggerFactory.getLogger(ShardWorker.class);
+
+    private final ShardManifest manifest;
+    private final PrintStream protocol;
+    private final FolderAnalyser analyser;
+    private final List<IndexSegment.Entry> pending = new ArrayList<>();
+    private long lastSegment = System.nanoTime();
+    private int segments;
+
+    private ShardWorker(ShardManifest manifest, PrintStream protocol) {
+        this.manifest = manifest;
+        this.protocol = protocol;
+        this.analyser = new FolderAnalyser(manifest.rootPath(), manifest.options());
+        manifest.sharedSizes().forEach(this.analyser::markSharedSize);
+    }
+
+    public static void main(String[] args) {
+        // Logging writes to the console by default, which would mix with the protocol, so it goes to standard error.
+        PrintStream protocol = new PrintStream(new FileOutputStream(FileDescriptor.out), true, StandardCharsets.UTF_8);
+        System.setOut(System.err);
+        if (args.length != 1) {
+            System.err.println("Usage: ShardWorker <manifest>");
+            System.exit(2);
+        }
+        // Nobody is left to merge the results once the coordinator is gone.
+        ProcessHandle.current().parent().ifPresent(parent -> parent.onExit().thenRun(() -> System.exit(1)));
+
+        try {
+            new ShardWorker(ShardManifest.read(Paths.get(args[0])), protocol).run();
+            System.exit(0);
+        } catch (Exception e) {
+            LoggerFactory.getLogger(ShardWorker.class).error("Shard worker failed", e);
+            System.exit(1);
+        }
+    }
+
+    private void run() throws IOException, InterruptedException {
+        AnalysisOptions options = this.manifest.options();
+        int threads = options.getEffectiveReadStage().max() + options.getEffectiveParseStage().max();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<FileStamp> files = this.manifest.files();
+        for (int i = 0; i < files.size(); i++) {
+            int index = i;
+            pool.execute(() -> this.parse(index, files.get(index)));
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+        synchronized (this) {
+            this.writeSegment();
+        }
+    }
+
+    private void parse(int index, FileStamp stamp) {
+        this.protocol.println(BEGIN + " " + index);
+        Map<String, String> metadata = null;
+        try {
+            metadata = this.analyser.parseForIndex(stamp.file(), stamp.fileKey(), stamp.size());
+        } catch (Exception e) {
+            this.logger.error("Could not parse: {}", stamp.file(), e);
+        }
+
+        synchronized (this) {
+            this.pending.add(new IndexSegment.Entry(stamp.fileKey(), stamp.size(), stamp.lastModified(), metadata));
+            if (this.pending.size() >= SEGMENT_FILES || System.nanoTime() - this.lastSegment >= SEGMENT_NANOS) {
+                try {
+                    this.writeSegment();
+                } catch (IOException e) {
+                    // The coordinator parses everything not in a segment again, so giving up here loses nothing.
+                    this.logger.error("Could not write index segment", e);
+                    System.exit(1);
+                }
+            }
+        }
+        this.protocol.println(END + " " + index);
+    }
+
+    private void writeSegment() throws IOException {
+        this.lastSegment = System.nanoTime();
+        if (this.pending.isEmpty()) {
+            return;
+        }
+
+        String name = "shard-" + this.manifest.shard() + "-" + this.segments++ + ".seg";
+        IndexSegment.write(this.manifest.segmentDirectory().resolve(name), this.pending);
+        this.pending.clear();
+        this.protocol.println(SEGMENT + " " + name);
+    }
+}
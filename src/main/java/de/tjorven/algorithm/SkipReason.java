@@ -0,0 +1,19 @@
+package de.tjorven.algorithm;
+
+public enum SkipReason {
+
+    TIMEOUT("skipped (timeout)"),
+    SIZE("skipped (size)"),
+    EMBEDDED_DOCUMENTS("skipped (embedded documents)"),
+    CRASH("skipped (crashed the parser)");
+
+    private final String description;
+
+    SkipReason(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return this.description;
+    }
+}
@@ -0,0 +1,234 @@
+package de.tjorven.algorithm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Stream;
+
+public class SortJournal implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SortJournal.class);
+
+    public static final Path JOURNAL_DIRECTORY = Paths.get(System.getProperty("user.home"), ".file-sorter", "journal");
+
+    private static final int MAGIC = 0x46534A4C;
+    private static final int FORMAT_VERSION = 3;
+    private static final int GROUP_COMMIT_SIZE = 1024;
+    private static final long GROUP_COMMIT_NANOS = 1_000_000_000L;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final byte PLANNED = 'P';
+    private static final byte PLAN_END = 'E';
+    private static final byte DONE = 'D';
+    private static final byte COMPLETE = 'C';
+    private static final byte REVERTED = 'R';
+
+    private final Path file;
+    private final FileChannel channel;
+    private final DataOutputStream out;
+    private final Map<RecursiveSorter.MoveHistory, Integer> indices;
+
+    private int pendingRecords;
+    private long lastCommitNanos = System.nanoTime();
+
+    private SortJournal(Path file, FileChannel channel, Map<RecursiveSorter.MoveHistory, Integer> indices) {
+        this.file = file;
+        this.channel = channel;
+        this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+        this.indices = indices;
+    }
+
+    public static SortJournal create(Path rootPath, Path targetRoot, List<String> attributes, ConflictPolicy conflictPolicy,
+                                     List<RecursiveSorter.MoveHistory> moves) throws IOException {
+        Files.createDirectories(JOURNAL_DIRECTORY);
+        Path file = JOURNAL_DIRECTORY.resolve(System.currentTimeMillis() + "-" + UUID.randomUUID() + ".journal");
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+
+        Map<RecursiveSorter.MoveHistory, Integer> indices = new HashMap<>(moves.size() * 2);
+        SortJournal journal = new SortJournal(file, channel, indices);
+        try {
+            DataOutputStream out = journal.out;
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(rootPath.toAbsolutePath().toString());
+            out.writeUTF(targetRoot.toAbsolutePath().toString());
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(attributes.size());
+            for (String attribute : attributes) {
+                out.writeUTF(attribute);
+            }
+            out.writeUTF(conflictPolicy.name());
+
+            for (int i = 0; i < moves.size(); i++) {
+                RecursiveSorter.MoveHistory move = moves.get(i);
+                out.writeByte(PLANNED);
+                out.writeUTF(move.source().toString());
+                out.writeUTF(move.target().toString());
+                indices.put(move, i);
+            }
+            out.writeByte(PLAN_END);
+            journal.commit();
+        } catch (IOException e) {
+            journal.close();
+            throw e;
+        }
+        return journal;
+    }
+
+    public static SortJournal append(Replay replay) throws IOException {
+        FileChannel channel = FileChannel.open(replay.file(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        Map<RecursiveSorter.MoveHistory, Integer> indices = new HashMap<>(replay.moves().size() * 2);
+        for (int i = 0; i < replay.moves().size(); i++) {
+            indices.put(replay.moves().get(i), i);
+        }
+        return new SortJournal(replay.file(), channel, indices);
+    }
+
+    public Path getFile() {
+        return this.file;
+    }
+
+    public synchronized void markDone(RecursiveSorter.MoveHistory move) throws IOException {
+        Integer index = this.indices.get(move);
+        if (index == null) {
+            return;
+        }
+
+        this.out.writeByte(DONE);
+        this.out.writeInt(index);
+        this.pendingRecords++;
+        if (this.pendingRecords >= GROUP_COMMIT_SIZE || System.nanoTime() - this.lastCommitNanos >= GROUP_COMMIT_NANOS) {
+            this.commit();
+        }
+    }
+
+    public synchronized void markComplete() throws IOException {
+        this.out.writeByte(COMPLETE);
+        this.commit();
+    }
+
+    public synchronized void markReverted() throws IOException {
+        this.out.writeByte(REVERTED);
+        this.commit();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            this.commit();
+        } finally {
+            this.channel.close();
+        }
+    }
+
+    private void commit() throws IOException {
+        this.out.flush();
+        this.channel.force(false);
+        this.pendingRecords = 0;
+        this.lastCommitNanos = System.nanoTime();
+    }
+
+    public static Replay read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            int version = in.readInt() == MAGIC ? in.readInt() : -1;
+            if (version < 1 || version > FORMAT_VERSION) {
+                throw new IOException("Unsupported journal format: " + file);
+            }
+
+            Path rootPath = Paths.get(in.readUTF());
+            // Version 1 always sorted in place.
+            Path targetRoot = version >= 2 ? Paths.get(in.readUTF()) : rootPath;
+            Instant createdAt = Instant.ofEpochMilli(in.readLong());
+            int attributeCount = in.readInt();
+            List<String> attributes = new ArrayList<>(attributeCount);
+            for (int i = 0; i < attributeCount; i++) {
+                attributes.add(in.readUTF());
+            }
+            // Before version 3 the policy was not recorded; resuming such a sort never replaced existing files.
+            ConflictPolicy conflictPolicy = version >= 3 ? ConflictPolicy.valueOf(in.readUTF()) : ConflictPolicy.RENAME;
+
+            List<RecursiveSorter.MoveHistory> moves = new ArrayList<>();
+            BitSet done = new BitSet();
+            boolean planComplete = false;
+            boolean complete = false;
+            boolean reverted = false;
+
+            try {
+                while (true) {
+                    byte type = in.readByte();
+                    switch (type) {
+                        case PLANNED -> moves.add(new RecursiveSorter.MoveHistory(Paths.get(in.readUTF()), Paths.get(in.readUTF())));
+                        case PLAN_END -> planComplete = true;
+                        case DONE -> done.set(in.readInt());
+                        case COMPLETE -> complete = true;
+                        case REVERTED -> reverted = true;
+                        default -> throw new EOFException("Unknown record type " + type);
+                    }
+                }
+            } catch (EOFException e) {
+                // A torn tail after a crash only loses records that were never committed.
+            }
+
+            if (!planComplete) {
+                moves.clear();
+            }
+            return new Replay(file, rootPath, targetRoot, createdAt, attributes, conflictPolicy, moves, done, complete, reverted);
+        }
+    }
+
+    public static List<Replay> list() {
+        if (!Files.isDirectory(JOURNAL_DIRECTORY)) {
+            return List.of();
+        }
+
+        try (Stream<Path> files = Files.list(JOURNAL_DIRECTORY)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".journal"))
+                    .map(file -> {
+                        try {
+                            return read(file);
+                        } catch (IOException e) {
+                            logger.warn("Skipping unreadable journal: {}", file, e);
+                            return null;
+                        }
+                    })
+                    .filter(Objects::nonNull)
+                    .sorted(Comparator.comparing(Replay::createdAt).reversed())
+                    .toList();
+        } catch (IOException e) {
+            logger.warn("Could not list journals in {}", JOURNAL_DIRECTORY, e);
+            return List.of();
+        }
+    }
+
+    public record Replay(Path file, Path rootPath, Path targetRoot, Instant createdAt, List<String> attributes,
+                         ConflictPolicy conflictPolicy, List<RecursiveSorter.MoveHistory> moves, BitSet done, boolean complete,
+                         boolean reverted) {
+
+        public List<RecursiveSorter.MoveHistory> pendingMoves() {
+            List<RecursiveSorter.MoveHistory> pending = new ArrayList<>();
+            for (int i = this.done.nextClearBit(0); i < this.moves.size(); i = this.done.nextClearBit(i + 1)) {
+                pending.add(this.moves.get(i));
+            }
+            return pending;
+        }
+
+        public String status() {
+            if (this.reverted) {
+                return "reverted";
+            }
+            if (this.complete) {
+                return "complete";
+            }
+            return "interrupted (" + this.done.cardinality() + "/" + this.moves.size() + " moved)";
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package de.tjorven.algorithm;
+
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+@Getter
+public final class SortPlan {
+
+    private static final Logger logger = LoggerFactory.getLogger(SortPlan.class);
+
+    private static final Pattern ILLEGAL_CHARACTERS = Pattern.compile("[\\\\/:*?\"<>|]");
+    private static final String UNKNOWN_PREFIX = "Unknown_";
+    public static final String DUPLICATES_FOLDER = "Duplicates";
+
+    private final Path rootPath;
+    private final Path targetRoot;
+    private final List<String> attributes;
+    private final ConflictPolicy conflictPolicy;
+    private final DuplicatePolicy duplicatePolicy;
+    private final List<TargetDirectory> directories;
+    private final List<Conflict> conflicts;
+    private final List<Duplicate> duplicates;
+    private final int size;
+
+    private SortPlan(Path rootPath, Path targetRoot, List<String> attributes, ConflictPolicy conflictPolicy,
+                     DuplicatePolicy duplicatePolicy, List<TargetDirectory> directories, List<Conflict> conflicts,
+                     List<Duplicate> duplicates) {
+        this.rootPath = rootPath;
+        this.targetRoot = targetRoot;
+        this.attributes = List.copyOf(attributes);
+        this.conflictPolicy = conflictPolicy;
+        this.duplicatePolicy = duplicatePolicy;
+        this.directories = List.copyOf(directories);
+        this.conflicts = List.copyOf(conflicts);
+        this.duplicates = List.copyOf(duplicates);
+        this.size = directories.stream().mapToInt(directory -> directory.moves().size()).sum();
+    }
+
+    public static SortPlan empty(Path rootPath) {
+        return new SortPlan(rootPath, rootPath, List.of(), ConflictPolicy.RENAME, DuplicatePolicy.KEEP, List.of(), List.of(), List.of());
+    }
+
+    public static SortPlan compile(Path rootPath, MetadataStore store, List<String> attributes, int[] files, ConflictPolicy policy) {
+        return compile(rootPath, rootPath, store, attributes, files, policy, DuplicatePolicy.KEEP);
+    }
+
+    // Throws CancellationException once the compiling thread is interrupted, so a stale preview gives way to the next one.
+    public static SortPlan compile(Path rootPath, Path targetRoot, MetadataStore store, List<String> attributes, int[] files,
+                                   ConflictPolicy policy, DuplicatePolicy duplicatePolicy) {
+        Compiler compiler = new Compiler(rootPath, store, attributes, policy, duplicatePolicy, isCaseInsensitive(targetRoot));
+        int[] candidates = files.length == store.size() ? null : files;
+        compiler.group(0, candidates, files.length, targetRoot, List.of());
+        compiler.placeAll(files, targetRoot);
+        return new SortPlan(rootPath, targetRoot, attributes, policy, duplicatePolicy, compiler.directories, compiler.conflicts,
+                compiler.duplicates);
+    }
+
+    // Places one target directory on its own, listing only that directory. Used where the preview expands a folder.
+    public static SortPlan compileDirectory(Path rootPath, Path directory, List<String> folders, MetadataStore store, int[] files,
+                                            ConflictPolicy policy) {
+        Compiler compiler = new Compiler(rootPath, store, List.of(), policy, DuplicatePolicy.KEEP, isCaseInsensitive(directory));
+        compiler.place(files, directory, folders);
+        return new SortPlan(rootPath, directory, List.of(), policy, DuplicatePolicy.KEEP, compiler.directories, compiler.conflicts,
+                List.of());
+    }
+
+    // The copies compile would set aside or link under the duplicate policy, sorted by file id. Touches no files.
+    public static int[] findCopies(Path rootPath, Path targetRoot, MetadataStore store, List<String> attributes, int[] files,
+                                   DuplicatePolicy duplicatePolicy) {
+        if (duplicatePolicy == DuplicatePolicy.KEEP) {
+            return new int[0];
+        }
+        // Nothing is placed here, so how the target compares names does not matter.
+        Compiler compiler = new Compiler(rootPath, store, attributes, ConflictPolicy.RENAME, duplicatePolicy, false);
+        return compiler.findOriginals(files, targetRoot).keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+    }
+
+    public static String folderName(String attribute, String value) {
+        String name = value == null ? "" : sanitize(value);
+        return name.isEmpty() ? sanitize(UNKNOWN_PREFIX + attribute) : name;
+    }
+
+    private static String sanitize(String value) {
+        return ILLEGAL_CHARACTERS.matcher(value).replaceAll("_").trim();
+    }
+
+    // Whether names that differ only in case are the same file under directory. Probed on the nearest existing ancestor
+    // whose name has a case; where nothing can be probed, the platform's usual file system decides.
+    private static boolean isCaseInsensitive(Path directory) {
+        for (Path current = directory.toAbsolutePath(); current.getFileName() != null; current = current.getParent()) {
+            String name = current.getFileName().toString();
+            String swapped = swapCase(name);
+            if (swapped.equals(name) || !Files.exists(current)) {
+                continue;
+            }
+            Path other = current.resolveSibling(swapped);
+            try {
+                return Files.exists(other) && Files.isSameFile(current, other);
+            } catch (IOException e) {
+                break;
+            }
+        }
+        String os = System.getProperty("os.name").toLowerCase(Locale.ROOT);
+        return os.contains("win") || os.contains("mac");
+    }
+
+    private static String swapCase(String name) {
+        StringBuilder swapped = new StringBuilder(name.length());
+        name.codePoints().forEach(c ->
+                swapped.appendCodePoint(Character.isUpperCase(c) ? Character.toLowerCase(c) : Character.toUpperCase(c)));
+        return swapped.toString();
+    }
+
+    public List<RecursiveSorter.MoveHistory> moves() {
+        List<RecursiveSorter.MoveHistory> moves = new ArrayList<>(this.size);
+        for (TargetDirectory directory : this.directories) {
+            moves.addAll(directory.moves());
+        }
+        return moves;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public record TargetDirectory(Path path, List<String> folders, List<RecursiveSorter.MoveHistory> moves) {
+    }
+
+    public record Conflict(Path target, List<Path> sources, boolean existingFile) {
+    }
+
+    // target is where the copy ends up, or null if it stays where it is. original is where the kept copy ends up.
+    public record Duplicate(Path source, Path target, Path original) {
+    }
+
+    private record Leaf(int[] files, Path directory, List<String> folders) {
+    }
+
+    private static final class Compiler {
+
+        private final Path rootPath;
+        private final MetadataStore store;
+        private final List<String> attributes;
+        private final ConflictPolicy policy;
+        private final DuplicatePolicy duplicatePolicy;
+        private final boolean caseInsensitive;
+        private final Map<String, String> folderNames = new HashMap<>();
+        private final List<Leaf> leaves = new ArrayList<>();
+        private final List<TargetDirectory> directories = new ArrayList<>();
+        private final List<Conflict> conflicts = new ArrayList<>();
+        private final List<Duplicate> duplicates = new ArrayList<>();
+
+        private Compiler(Path rootPath, MetadataStore store, List<String> attributes, ConflictPolicy policy,
+                         DuplicatePolicy duplicatePolicy, boolean caseInsensitive) {
+            this.rootPath = rootPath;
+            this.store = store;
+            this.attributes = attributes;
+            this.policy = policy;
+            this.duplicatePolicy = duplicatePolicy;
+            this.caseInsensitive = caseInsensitive;
+        }
+
+        // candidates == null stands for every file in the store, which lets groupBy walk posting lists instead of files.
+        private void group(int level, int[] candidates, int fileCount, Path directory, List<String> folders) {
+            if (fileCount == 0) {
+                return;
+            }
+            if (level == this.attributes.size()) {
+                this.leaves.add(new Leaf(candidates == null ? this.store.allFiles() : candidates, directory, folders));
+                return;
+            }
+
+            String attribute = this.attributes.get(level);
+            Map<String, List<int[]>> byFolder = new HashMap<>();
+            this.store.groupBy(attribute, candidates).forEach((value, files) ->
+                    byFolder.computeIfAbsent(this.folderName(attribute, value), name -> new ArrayList<>()).add(files));
+
+            List<String> names = new ArrayList<>(byFolder.keySet());
+            names.sort(String.CASE_INSENSITIVE_ORDER);
+            for (String name : names) {
+                checkInterrupted();
+                int[] files = concat(byFolder.get(name));
+                List<String> childFolders = new ArrayList<>(folders.size() + 1);
+                childFolders.addAll(folders);
+                childFolders.add(name);
+                this.group(level + 1, files, files.length, directory.resolve(name), childFolders);
+            }
+        }
+
+        private String folderName(String attribute, String value) {
+            String name = value == null ? "" : this.folderNames.computeIfAbsent(value, SortPlan::sanitize);
+            return name.isEmpty() ? sanitize(UNKNOWN_PREFIX + attribute) : name;
+        }
+
+        private void placeAll(int[] files, Path targetRoot) {
+            Map<Integer, Integer> originals = this.duplicatePolicy == DuplicatePolicy.KEEP ? Map.of() : this.findOriginals(files, targetRoot);
+            boolean routeCopies = this.duplicatePolicy == DuplicatePolicy.SKIP || this.duplicatePolicy == DuplicatePolicy.FOLDER;
+
+            IntStream.Builder copies = IntStream.builder();
+            for (Leaf leaf : this.leaves) {
+                checkInterrupted();
+                int[] placed = leaf.files();
+                if (routeCopies && !originals.isEmpty()) {
+                    placed = IntStream.of(leaf.files()).filter(fileId -> !originals.containsKey(fileId)).toArray();
+                    IntStream.of(leaf.files()).filter(originals::containsKey).forEach(copies::add);
+                }
+                this.place(placed, leaf.directory(), leaf.folders());
+            }
+            if (this.duplicatePolicy == DuplicatePolicy.FOLDER) {
+                this.place(copies.build().sorted().toArray(), targetRoot.resolve(DUPLICATES_FOLDER), List.of(DUPLICATES_FOLDER));
+            }
+            this.describeDuplicates(originals);
+        }
+
+        // Maps every copy to the file that is kept. A copy that already sits in its target folder is preferred,
+        // so repeated sorts never shuffle files that were sorted before.
+        private Map<Integer, Integer> findOriginals(int[] files, Path targetRoot) {
+            BitSet included = new BitSet();
+            IntStream.of(files).forEach(included::set);
+            List<int[]> groups = new ArrayList<>();
+            BitSet members = new BitSet();
+            for (int[] group : this.store.duplicateGroups()) {
+                int[] candidates = IntStream.of(group).filter(included::get).toArray();
+                if (candidates.length > 1) {
+                    groups.add(candidates);
+                    IntStream.of(candidates).forEach(members::set);
+                }
+            }
+            if (groups.isEmpty()) {
+                return Map.of();
+            }
+
+            Map<Integer, Path> directories = new HashMap<>();
+            members.stream().forEach(fileId -> directories.put(fileId, this.directoryOf(fileId, targetRoot)));
+
+            Map<Integer, Integer> originals = new HashMap<>();
+            for (int[] group : groups) {
+                int original = IntStream.of(group).boxed()
+                        .min(Comparator.<Integer, Boolean>comparing(fileId -> !this.isInPlace(fileId, directories.get(fileId)))
+                                .thenComparing(this::source))
+                        .orElseThrow();
+                for (int fileId : group) {
+                    if (fileId != original) {
+                        originals.put(fileId, original);
+                    }
+                }
+            }
+            return originals;
+        }
+
+        private Path directoryOf(int fileId, Path targetRoot) {
+            Path directory = targetRoot;
+            for (String attribute : this.attributes) {
+                directory = directory.resolve(this.folderName(attribute, this.store.value(fileId, attribute)));
+            }
+            return directory;
+        }
+
+        private boolean isInPlace(int fileId, Path directory) {
+            Path parent = this.source(fileId).getParent();
+            return parent != null && parent.equals(directory);
+        }
+
+        private Path source(int fileId) {
+            return this.rootPath.resolve(this.store.fileKey(fileId));
+        }
+
+        private void describeDuplicates(Map<Integer, Integer> originals) {
+            if (originals.isEmpty()) {
+                return;
+            }
+            Map<Path, Path> targets = new HashMap<>();
+            for (TargetDirectory directory : this.directories) {
+                for (RecursiveSorter.MoveHistory move : directory.moves()) {
+                    targets.put(move.source(), move.target());
+                }
+            }
+
+            originals.forEach((copy, original) -> {
+                Path source = this.source(copy);
+                Path originalSource = this.source(original);
+                this.duplicates.add(new Duplicate(source, targets.get(source), targets.getOrDefault(originalSource, originalSource)));
+            });
+            this.duplicates.sort(Comparator.comparing(Duplicate::source));
+        }
+
+        private void place(int[] files, Path directory, List<String> folders) {
+            // Grouped by lower case name where the target ignores case, so "Song.mp3" and "song.mp3" count as one name there.
+            Map<String, List<Path>> byName = new TreeMap<>();
+            for (int fileId : files) {
+                Path source = this.source(fileId);
+                if (source.getParent() != null && source.getParent().equals(directory)) {
+                    continue;
+                }
+                byName.computeIfAbsent(this.key(source.getFileName().toString()), name -> new ArrayList<>()).add(source);
+            }
+            if (byName.isEmpty()) {
+                return;
+            }
+
+            Set<String> taken = this.existingNames(directory);
+            Set<String> planned = new HashSet<>(byName.keySet());
+            List<RecursiveSorter.MoveHistory> moves = new ArrayList<>(files.length);
+            for (Map.Entry<String, List<Path>> entry : byName.entrySet()) {
+                List<Path> sources = entry.getValue();
+                sources.sort(Comparator.naturalOrder());
+                boolean existing = taken.contains(entry.getKey());
+                if (sources.size() > 1 || existing) {
+                    this.conflicts.add(new Conflict(directory.resolve(sources.get(0).getFileName()), List.copyOf(sources), existing));
+                }
+                this.resolve(sources, existing, directory, taken, planned, moves);
+            }
+
+            if (!moves.isEmpty()) {
+                this.directories.add(new TargetDirectory(directory, List.copyOf(folders), List.copyOf(moves)));
+            }
+        }
+
+        private void resolve(List<Path> sources, boolean existing, Path directory, Set<String> taken, Set<String> planned,
+                             List<RecursiveSorter.MoveHistory> moves) {
+            for (int i = 0; i < sources.size(); i++) {
+                Path source = sources.get(i);
+                String fileName = source.getFileName().toString();
+                boolean collides = existing || i > 0;
+                if (!collides || this.policy == ConflictPolicy.OVERWRITE) {
+                    moves.add(new RecursiveSorter.MoveHistory(source, directory.resolve(fileName)));
+                } else if (this.policy == ConflictPolicy.RENAME) {
+                    String renamed = this.uniqueName(fileName, taken, planned);
+                    planned.add(this.key(renamed));
+                    moves.add(new RecursiveSorter.MoveHistory(source, directory.resolve(renamed)));
+                }
+            }
+        }
+
+        private String uniqueName(String fileName, Set<String> taken, Set<String> planned) {
+            int dot = fileName.lastIndexOf('.');
+            String stem = dot > 0 ? fileName.substring(0, dot) : fileName;
+            String extension = dot > 0 ? fileName.substring(dot) : "";
+            for (int n = 2; ; n++) {
+                String candidate = stem + " (" + n + ")" + extension;
+                if (!taken.contains(this.key(candidate)) && !planned.contains(this.key(candidate))) {
+                    return candidate;
+                }
+            }
+        }
+
+        private Set<String> existingNames(Path directory) {
+            if (!Files.isDirectory(directory)) {
+                return Set.of();
+            }
+            Set<String> names = new HashSet<>();
+            try (Stream<Path> entries = Files.list(directory)) {
+                entries.forEach(entry -> names.add(this.key(entry.getFileName().toString())));
+            } catch (IOException e) {
+                logger.warn("Could not list {} to check for name conflicts", directory, e);
+            }
+            return names;
+        }
+
+        private static void checkInterrupted() {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Sort plan compilation was interrupted");
+            }
+        }
+
+        private String key(String fileName) {
+            return this.caseInsensitive ? fileName.toLowerCase(Locale.ROOT) : fileName;
+        }
+
+        private static int[] concat(List<int[]> parts) {
+            if (parts.size() == 1) {
+                return parts.get(0);
+            }
+            int[] merged = new int[parts.stream().mapToInt(part -> part.length).sum()];
+            int offset = 0;
+            for (int[] part : parts) {
+                System.arraycopy(part, 0, merged, offset, part.length);
+                offset += part.length;
+            }
+            return merged;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package de.tjorven.algorithm;
+
+public record StageLimits(int initial, int min, int max) {
+
+    public StageLimits {
+        min = Math.max(1, min);
+        max = Math.max(min, max);
+        initial = Math.max(min, Math.min(max, initial));
+    }
+
+    public static StageLimits fixed(int concurrency) {
+        return new StageLimits(concurrency, concurrency, concurrency);
+    }
+
+    public boolean isFixed() {
+        return this.min == this.max;
+    }
+}
@@ -0,0 +1,57 @@
+package de.tjorven.algorithm;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Set;
+
+public enum StorageProfile {
+
+    // A spinning disk seeks between every concurrent reader, so reads start serial and may only grow a little.
+    HDD("Spinning disk", new StageLimits(1, 1, 4), new StageLimits(2, 1, 4)),
+    SSD("SSD / NVMe", new StageLimits(8, 2, 64), new StageLimits(4, 1, 16)),
+    // Every request waits for a round trip, so throughput comes from keeping many of them in flight.
+    NETWORK("Network share", new StageLimits(16, 2, 64), new StageLimits(16, 2, 64));
+
+    private static final Set<String> NETWORK_FILE_SYSTEMS = Set.of("nfs", "nfs4", "cifs", "smbfs", "smb2", "smb3",
+            "afpfs", "webdav", "davfs", "fuse.sshfs", "9p");
+
+    private final String description;
+    private final StageLimits read;
+    private final StageLimits move;
+
+    StorageProfile(String description, StageLimits read, StageLimits move) {
+        this.description = description;
+        this.read = read;
+        this.move = move;
+    }
+
+    public String getDescription() {
+        return this.description;
+    }
+
+    public StageLimits getRead() {
+        return this.read;
+    }
+
+    public StageLimits getMove() {
+        return this.move;
+    }
+
+    // Parsing is CPU work on any storage. The headroom above one per core covers parsers that wait on reads.
+    public StageLimits getParse() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return new StageLimits(cores, 1, cores * 2);
+    }
+
+    // Network shares can be told apart by their file system type. Whether a local disk spins cannot, so it stays SSD.
+    public static StorageProfile detect(Path path) {
+        try {
+            String type = Files.getFileStore(path).type().toLowerCase(Locale.ROOT);
+            return NETWORK_FILE_SYSTEMS.contains(type) ? NETWORK : SSD;
+        } catch (IOException e) {
+            return SSD;
+        }
+    }
+}
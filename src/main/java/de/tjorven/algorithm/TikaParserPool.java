@@ -0,0 +1,92 @@
+package de.tjorven.algorithm;
+
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public final class TikaParserPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(TikaParserPool.class);
+
+    private static final ThreadLocal<AutoDetectParser> PARSERS = ThreadLocal.withInitial(() -> new AutoDetectParser(config()));
+    private static final AtomicBoolean PREWARM_STARTED = new AtomicBoolean();
+
+    // Small enough to parse instantly, but they pull in detection, charset handling and the SAX pipeline.
+    private static final List<byte[]> WARM_UP_DOCUMENTS = List.of(
+            """
+                    <html><head><title>Warm-up</title><meta name="author" content="File-Sorter"></head>
+                    <body><p>Loads the classes every real parse needs.</p></body></html>
+                    """.getBytes(StandardCharsets.UTF_8),
+            "Plain text, so the text parser and encoding detectors are loaded as well.".getBytes(StandardCharsets.UTF_8));
+
+    private TikaParserPool() {
+    }
+
+    public static TikaConfig config() {
+        return ConfigHolder.CONFIG;
+    }
+
+    public static AutoDetectParser parser() {
+        return PARSERS.get();
+    }
+
+    // Starts loading Tika on a background thread. A parse that starts earlier simply waits for the same
+    // initialisation instead of doing it twice.
+    public static void prewarm() {
+        if (!PREWARM_STARTED.compareAndSet(false, true)) {
+            return;
+        }
+
+        Thread thread = new Thread(() -> {
+            try {
+                logger.info("Tika ready after {} ms", warmUp().toMillis());
+            } catch (IOException | RuntimeException | LinkageError e) {
+                logger.warn("Could not pre-warm Tika", e);
+            }
+        }, "tika-prewarm");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    public static Duration warmUp() throws IOException {
+        long start = System.nanoTime();
+        AutoDetectParser parser = parser();
+        for (byte[] document : WARM_UP_DOCUMENTS) {
+            try (InputStream is = new ByteArrayInputStream(document)) {
+                parser.parse(is, new BodyContentHandler(-1), new Metadata());
+            } catch (SAXException | TikaException e) {
+                throw new IOException("Could not parse warm-up document", e);
+            }
+        }
+        return Duration.ofNanos(System.nanoTime() - start);
+    }
+
+    private static final class ConfigHolder {
+        private static final TikaConfig CONFIG = load();
+
+        private static TikaConfig load() {
+            try {
+                return new TikaConfig(TikaParserPool.class.getClassLoader());
+            } catch (TikaException e) {
+                throw new IllegalStateException("Could not load Tika configuration", e);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package de.tjorven.algorithm;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@Builder(toBuilder = true)
+public class WalkOptions {
+
+    @Builder.Default
+    private final boolean recursive = false;
+    @Builder.Default
+    private final int maxDepth = Integer.MAX_VALUE;
+    @Builder.Default
+    private final List<String> includes = List.of();
+    @Builder.Default
+    private final List<String> excludes = List.of();
+    @Builder.Default
+    private final int parallelism = Runtime.getRuntime().availableProcessors();
+
+    public static WalkOptions defaults() {
+        return WalkOptions.builder().build();
+    }
+
+    public int getEffectiveMaxDepth() {
+        return this.recursive ? Math.max(1, this.maxDepth) : 1;
+    }
+}
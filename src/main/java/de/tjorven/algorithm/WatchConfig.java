@@ -0,0 +1,91 @@
+package de.tjorven.algorithm;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+@Getter
+@Builder(toBuilder = true)
+public class WatchConfig {
+
+    private final Path folder;
+    private final Path target;
+    @Builder.Default
+    private final List<String> attributes = List.of();
+    @Builder.Default
+    private final List<String> extensions = List.of();
+    @Builder.Default
+    private final Duration quietPeriod = Duration.ofSeconds(2);
+    @Builder.Default
+    private final int batchSize = 50;
+    @Builder.Default
+    private final AnalysisOptions analysisOptions = AnalysisOptions.defaults();
+    @Builder.Default
+    private final MoveOptions moveOptions = MoveOptions.forLocalDisk();
+
+    public static WatchConfig load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        }
+
+        WatchConfigBuilder builder = WatchConfig.builder()
+                .attributes(split(properties.getProperty("attributes", "")))
+                .extensions(split(properties.getProperty("extensions", "")));
+        String folder = properties.getProperty("folder");
+        if (folder != null) {
+            builder.folder(Path.of(folder));
+        }
+        String target = properties.getProperty("target");
+        if (target != null) {
+            builder.target(Path.of(target));
+        }
+        String quietPeriod = properties.getProperty("quietPeriodMillis");
+        if (quietPeriod != null) {
+            builder.quietPeriod(Duration.ofMillis(Long.parseLong(quietPeriod.trim())));
+        }
+        String batchSize = properties.getProperty("batchSize");
+        if (batchSize != null) {
+            builder.batchSize(Integer.parseInt(batchSize.trim()));
+        }
+        return builder.build();
+    }
+
+    public void save(Path file) throws IOException {
+        Properties properties = new Properties();
+        if (this.folder != null) {
+            properties.setProperty("folder", this.folder.toString());
+        }
+        if (this.target != null) {
+            properties.setProperty("target", this.target.toString());
+        }
+        properties.setProperty("attributes", String.join(",", this.attributes));
+        properties.setProperty("extensions", String.join(",", this.extensions));
+        properties.setProperty("quietPeriodMillis", Long.toString(this.quietPeriod.toMillis()));
+        properties.setProperty("batchSize", Integer.toString(this.batchSize));
+
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (Writer writer = Files.newBufferedWriter(file)) {
+            properties.store(writer, "File Sorter watch folder");
+        }
+    }
+
+    private static List<String> split(String value) {
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(part -> !part.isEmpty())
+                .toList();
+    }
+}
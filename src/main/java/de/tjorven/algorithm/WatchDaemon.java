@@ -0,0 +1,218 @@
+package de.tjorven.algorithm;
+
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+public class WatchDaemon {
+
+    private static final Logger logger = LoggerFactory.getLogger(WatchDaemon.class);
+
+    private static final long POLL_MILLIS = 250;
+    private static final int MAX_ATTEMPTS = 8;
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.MINUTES.toNanos(5);
+    private static final long INDEX_SAVE_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final Path rootPath;
+    private final WatchConfig config;
+    private final Map<Path, PendingFile> pending = new LinkedHashMap<>();
+    private final FolderAnalyser analyser;
+
+    @Setter
+    private WatchListener listener = WatchListener.NONE;
+
+    private volatile WatchService watchService;
+    private volatile boolean stopped;
+
+    public WatchDaemon(WatchConfig config) {
+        this.rootPath = config.getFolder().toAbsolutePath().normalize();
+        this.config = config;
+        // Batches are parsed only to be sorted, so nothing beyond the hierarchy attributes is worth reading.
+        AnalysisOptions options = config.getAnalysisOptions().toBuilder()
+                .requiredAttributes(config.getAttributes())
+                .build();
+        // One analyser lives as long as the daemon, so its store and index are loaded once rather than per batch.
+        this.analyser = new FolderAnalyser(this.rootPath, options);
+    }
+
+    public void run() throws IOException {
+        try (WatchService service = this.rootPath.getFileSystem().newWatchService()) {
+            this.watchService = service;
+            this.rootPath.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            logger.info("Watching {} for new files", this.rootPath);
+
+            // Files dropped while the daemon was not running are picked up like new arrivals.
+            this.rescan();
+
+            long lastSave = System.nanoTime();
+            while (!this.stopped) {
+                WatchKey key = service.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            this.rescan();
+                        } else {
+                            this.track(this.rootPath.resolve((Path) event.context()));
+                        }
+                    }
+                    if (!key.reset()) {
+                        throw new IOException("Watched folder is no longer accessible: " + this.rootPath);
+                    }
+                }
+                this.sortReadyFiles();
+                if (System.nanoTime() - lastSave >= INDEX_SAVE_NANOS) {
+                    this.analyser.saveBatchIndex();
+                    lastSave = System.nanoTime();
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            if (!this.stopped) {
+                throw e;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.analyser.saveBatchIndex();
+        }
+    }
+
+    public void stop() {
+        this.stopped = true;
+        WatchService current = this.watchService;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void rescan() throws IOException {
+        try (Stream<Path> files = Files.list(this.rootPath)) {
+            files.forEach(this::track);
+        }
+    }
+
+    private void track(Path file) {
+        if (!RecursiveSorter.hasAllowedExtension(file, this.config.getExtensions())) {
+            return;
+        }
+
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            if (!attributes.isRegularFile()) {
+                this.pending.remove(file);
+                return;
+            }
+            this.pending.put(file, new PendingFile(attributes.size(), attributes.lastModifiedTime().toMillis(), System.nanoTime(), 0));
+        } catch (IOException e) {
+            this.pending.remove(file);
+        }
+    }
+
+    private void sortReadyFiles() {
+        long now = System.nanoTime();
+        long quietNanos = this.config.getQuietPeriod().toNanos();
+        Map<Path, PendingFile> ready = new LinkedHashMap<>();
+
+        Iterator<Map.Entry<Path, PendingFile>> iterator = this.pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, PendingFile> entry = iterator.next();
+            if (now - entry.getValue().seenAt() < quietNanos) {
+                continue;
+            }
+
+            Path file = entry.getKey();
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                PendingFile previous = entry.getValue();
+                PendingFile current = new PendingFile(attributes.size(), attributes.lastModifiedTime().toMillis(), now, previous.attempts());
+                if (!attributes.isRegularFile()) {
+                    iterator.remove();
+                } else if (current.size() != previous.size() || current.lastModified() != previous.lastModified()
+                        || !isWriteComplete(file)) {
+                    entry.setValue(current);
+                } else {
+                    iterator.remove();
+                    ready.put(file, current);
+                }
+            } catch (IOException e) {
+                iterator.remove();
+            }
+        }
+
+        List<Path> files = new ArrayList<>(ready.keySet());
+        for (int from = 0; from < files.size() && !this.stopped; from += this.config.getBatchSize()) {
+            List<Path> batch = files.subList(from, Math.min(files.size(), from + this.config.getBatchSize()));
+            Set<Path> failed = this.sortBatch(batch);
+            for (Path file : failed) {
+                this.retryLater(file, ready.get(file));
+            }
+        }
+    }
+
+    // A file that could not be parsed, usually because another program still holds it, is tried again later.
+    // The wait doubles with every attempt, and a file that keeps failing is given up until it changes again.
+    private void retryLater(Path file, PendingFile failed) {
+        int attempts = failed.attempts() + 1;
+        if (attempts >= MAX_ATTEMPTS) {
+            logger.warn("Giving up on {} after {} attempts, it is retried once it changes", file, attempts);
+            return;
+        }
+        long backoff = Math.min(MAX_BACKOFF_NANOS, this.config.getQuietPeriod().toNanos() << attempts);
+        long quietNanos = this.config.getQuietPeriod().toNanos();
+        // seenAt is pushed ahead so the file only becomes ready once the quiet period and the backoff have passed.
+        this.pending.putIfAbsent(file, new PendingFile(failed.size(), failed.lastModified(), System.nanoTime() + backoff - quietNanos,
+                attempts));
+    }
+
+    private Set<Path> sortBatch(List<Path> files) {
+        Set<Path> failed = this.analyser.analyseBatch(files);
+        List<Path> parsed = files.stream().filter(file -> !failed.contains(file)).toList();
+        if (parsed.isEmpty()) {
+            return failed;
+        }
+
+        RecursiveSorter sorter = new RecursiveSorter(this.rootPath.toString(), this.analyser.getStore());
+        sorter.setMoveOptions(this.config.getMoveOptions());
+        sorter.setTargetRoot(this.config.getTarget());
+        try {
+            MoveStats stats = sorter.sortFiles(this.rootPath, this.config.getAttributes(), parsed);
+            logger.info("Sorted batch of {} files: {} moved, {} failed", parsed.size(), stats.moved(), stats.failed());
+            this.listener.onBatch(parsed.size(), stats, sorter.getLastJournal());
+        } catch (IOException e) {
+            logger.error("Could not sort batch of {} files", parsed.size(), e);
+        }
+        // Whatever was moved away no longer belongs to the watched folder; files left behind keep their entries.
+        this.analyser.forget(parsed.stream().filter(Files::notExists).toList());
+        return failed;
+    }
+
+    private static boolean isWriteComplete(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return false;
+            }
+            lock.release();
+            return true;
+        } catch (AccessDeniedException e) {
+            // Read-only files cannot be opened for writing, but nobody is writing to them either.
+            return Files.isReadable(file);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private record PendingFile(long size, long lastModified, long seenAt, int attempts) {
+    }
+}
@@ -0,0 +1,12 @@
+package de.tjorven.algorithm;
+
+import java.nio.file.Path;
+
+@FunctionalInterface
+public interface WatchListener {
+
+    WatchListener NONE = (files, stats, journal) -> {
+    };
+
+    void onBatch(int files, MoveStats stats, Path journal);
+}
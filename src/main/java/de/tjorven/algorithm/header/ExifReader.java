@@ -0,0 +1,159 @@
+package de.tjorven.algorithm.header;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+final class ExifReader {
+
+    private static final int EXIF_IFD_POINTER = 0x8769;
+    private static final int MAX_SEGMENTS = 64;
+
+    private static final Map<Integer, String> IFD0_TAGS = Map.of(
+            0x0100, "tiff:ImageWidth",
+            0x0101, "tiff:ImageLength",
+            0x010F, "tiff:Make",
+            0x0110, "tiff:Model",
+            0x0112, "tiff:Orientation",
+            0x0131, "tiff:Software",
+            0x0132, "dcterms:modified"
+    );
+    private static final Map<Integer, String> EXIF_TAGS = Map.of(
+            0x9003, "exif:DateTimeOriginal"
+    );
+
+    private ExifReader() {
+    }
+
+    static boolean matchesJpeg(ByteBuffer head) {
+        return head.limit() >= 3 && (head.get(0) & 0xFF) == 0xFF && (head.get(1) & 0xFF) == 0xD8 && (head.get(2) & 0xFF) == 0xFF;
+    }
+
+    static boolean matchesTiff(ByteBuffer head) {
+        if (head.limit() < 4) {
+            return false;
+        }
+        String order = FileRegion.ascii(head, 0, 2);
+        ByteBuffer buffer = head.duplicate().order(order.equals("II") ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        return (order.equals("II") || order.equals("MM")) && buffer.getShort(2) == 42;
+    }
+
+    static Map<String, String> readJpeg(FileRegion region) throws IOException {
+        Map<String, String> metadata = new LinkedHashMap<>();
+        metadata.put("Content-Type", "image/jpeg");
+
+        long position = 2;
+        for (int segment = 0; segment < MAX_SEGMENTS && position + 4 <= region.size(); segment++) {
+            ByteBuffer header = region.read(position, 4);
+            if ((header.get(0) & 0xFF) != 0xFF) {
+                return null;
+            }
+            int marker = header.get(1) & 0xFF;
+            if (marker == 0xFF) {
+                position++;
+                continue;
+            }
+            if (marker == 0xDA || marker == 0xD9) {
+                break;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                position += 2;
+                continue;
+            }
+
+            int length = FileRegion.uint16(header, 2);
+            if (marker == 0xE1 && length > 8) {
+                ByteBuffer app1 = region.read(position + 4, length - 2);
+                if (FileRegion.ascii(app1, 0, 6).equals("Exif\0\0")) {
+                    readTiff(app1.position(6).slice(), metadata);
+                }
+            } else if (isStartOfFrame(marker) && length >= 7) {
+                ByteBuffer frame = region.read(position + 4, 5);
+                metadata.put("tiff:ImageLength", Integer.toString(FileRegion.uint16(frame, 1)));
+                metadata.put("tiff:ImageWidth", Integer.toString(FileRegion.uint16(frame, 3)));
+            }
+            position += 2 + length;
+        }
+        return metadata;
+    }
+
+    static Map<String, String> readTiff(FileRegion region) {
+        // Only IFDs inside the first block are read; files with their IFD at the end go through Tika.
+        Map<String, String> metadata = new LinkedHashMap<>();
+        metadata.put("Content-Type", "image/tiff");
+        readTiff(region.head(), metadata);
+        return metadata;
+    }
+
+    private static void readTiff(ByteBuffer tiff, Map<String, String> metadata) {
+        ByteBuffer buffer = tiff.duplicate().order(FileRegion.ascii(tiff, 0, 2).equals("II") ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        if (buffer.getShort(2) != 42) {
+            return;
+        }
+
+        long exifOffset = readIfd(buffer, buffer.getInt(4), IFD0_TAGS, metadata);
+        if (exifOffset > 0) {
+            readIfd(buffer, (int) exifOffset, EXIF_TAGS, metadata);
+        }
+
+        String created = metadata.get("exif:DateTimeOriginal");
+        if (created != null) {
+            metadata.put("dcterms:created", created);
+        }
+    }
+
+    private static long readIfd(ByteBuffer buffer, int offset, Map<Integer, String> tags, Map<String, String> metadata) {
+        int count = FileRegion.uint16(buffer, offset);
+        long exifOffset = -1;
+        for (int i = 0; i < count; i++) {
+            int entry = offset + 2 + i * 12;
+            int tag = FileRegion.uint16(buffer, entry);
+            int type = FileRegion.uint16(buffer, entry + 2);
+            int valueCount = buffer.getInt(entry + 4);
+
+            if (tag == EXIF_IFD_POINTER) {
+                exifOffset = FileRegion.uint32(buffer, entry + 8);
+                continue;
+            }
+            String key = tags.get(tag);
+            if (key == null) {
+                continue;
+            }
+
+            String value = switch (type) {
+                case 2 -> ascii(buffer, entry, valueCount);
+                case 3 -> Integer.toString(FileRegion.uint16(buffer, entry + 8));
+                case 4 -> Long.toString(FileRegion.uint32(buffer, entry + 8));
+                default -> null;
+            };
+            if (value != null && !value.isEmpty()) {
+                metadata.put(key, key.startsWith("dcterms:") || key.equals("exif:DateTimeOriginal") ? isoDate(value) : value);
+            }
+        }
+        return exifOffset;
+    }
+
+    private static String ascii(ByteBuffer buffer, int entry, int count) {
+        if (count <= 0) {
+            return null;
+        }
+        int offset = count <= 4 ? entry + 8 : buffer.getInt(entry + 8);
+        String value = FileRegion.ascii(buffer, offset, count);
+        int terminator = value.indexOf('\0');
+        return (terminator >= 0 ? value.substring(0, terminator) : value).trim();
+    }
+
+    // EXIF writes "2021:07:14 18:30:00"; Tika reports "2021-07-14T18:30:00".
+    private static String isoDate(String value) {
+        if (value.length() != 19 || value.charAt(4) != ':' || value.charAt(7) != ':') {
+            return value;
+        }
+        return value.substring(0, 4) + "-" + value.substring(5, 7) + "-" + value.substring(8, 10) + "T" + value.substring(11);
+    }
+
+    private static boolean isStartOfFrame(int marker) {
+        return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+}
@@ -0,0 +1,101 @@
+package de.tjorven.algorithm.header;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+final class FileRegion implements Closeable {
+
+    private static final int HEAD_SIZE = 16 * 1024;
+    // Tag blocks and text values are small. Lengths beyond these come from corrupt or crafted headers,
+    // and are refused before anything is allocated for them.
+    private static final int MAX_REGION_SIZE = 16 * 1024 * 1024;
+    private static final int MAX_STRING_LENGTH = 64 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private final ByteBuffer head;
+
+    private FileRegion(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.head = ByteBuffer.allocate((int) Math.min(this.size, HEAD_SIZE));
+        int read;
+        do {
+            read = channel.read(this.head, this.head.position());
+        } while (read > 0 && this.head.hasRemaining());
+        this.head.flip();
+    }
+
+    static FileRegion open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new FileRegion(channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    long size() {
+        return this.size;
+    }
+
+    ByteBuffer head() {
+        return this.head.duplicate();
+    }
+
+    ByteBuffer read(long position, int length) throws IOException {
+        if (position < 0 || length < 0 || position + length > this.size) {
+            throw new EOFException("Region " + position + "+" + length + " is outside the file");
+        }
+        if (length > MAX_REGION_SIZE) {
+            throw new IOException("Region " + position + "+" + length + " is larger than any header");
+        }
+        if (position + length <= this.head.limit()) {
+            return this.head.duplicate().position((int) position).limit((int) position + length).slice();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (this.channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return buffer.flip();
+    }
+
+    static String ascii(ByteBuffer buffer, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > buffer.limit() - length) {
+            throw new IndexOutOfBoundsException("String " + offset + "+" + length + " is outside a block of " + buffer.limit());
+        }
+        if (length > MAX_STRING_LENGTH) {
+            throw new IllegalArgumentException("String of " + length + " bytes is longer than any tag value");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    static int uint16(ByteBuffer buffer, int offset) {
+        return buffer.getShort(offset) & 0xFFFF;
+    }
+
+    static int uint24(ByteBuffer buffer, int offset) {
+        return (buffer.get(offset) & 0xFF) << 16 | (buffer.get(offset + 1) & 0xFF) << 8 | buffer.get(offset + 2) & 0xFF;
+    }
+
+    static long uint32(ByteBuffer buffer, int offset) {
+        return buffer.getInt(offset) & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
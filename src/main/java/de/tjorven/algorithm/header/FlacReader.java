@@ -0,0 +1,109 @@
+package de.tjorven.algorithm.header;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+final class FlacReader {
+
+    private static final int STREAMINFO = 0;
+    private static final int VORBIS_COMMENT = 4;
+    private static final int MAX_COMMENT_BLOCK = 1024 * 1024;
+
+    private static final Map<String, String> COMMENT_KEYS = Map.of(
+            "TITLE", "dc:title",
+            "ARTIST", "xmpDM:artist",
+            "ALBUM", "xmpDM:album",
+            "ALBUMARTIST", "xmpDM:albumArtist",
+            "GENRE", "xmpDM:genre",
+            "DATE", "xmpDM:releaseDate",
+            "TRACKNUMBER", "xmpDM:trackNumber",
+            "DISCNUMBER", "xmpDM:discNumber",
+            "COMPOSER", "xmpDM:composer"
+    );
+
+    private FlacReader() {
+    }
+
+    static boolean matches(ByteBuffer head) {
+        return head.limit() >= 4 && FileRegion.ascii(head, 0, 4).equals("fLaC");
+    }
+
+    static Map<String, String> read(FileRegion region) throws IOException {
+        Map<String, String> metadata = new LinkedHashMap<>();
+        boolean streamInfo = false;
+
+        long position = 4;
+        boolean last = false;
+        while (!last && position + 4 <= region.size()) {
+            ByteBuffer header = region.read(position, 4);
+            last = (header.get(0) & 0x80) != 0;
+            int type = header.get(0) & 0x7F;
+            int length = FileRegion.uint24(header, 1);
+            long body = position + 4;
+
+            if (type == STREAMINFO && length >= 18) {
+                readStreamInfo(region.read(body, 18), metadata);
+                streamInfo = true;
+            } else if (type == VORBIS_COMMENT && length <= MAX_COMMENT_BLOCK) {
+                readComments(region.read(body, length), metadata);
+            }
+            position = body + length;
+        }
+
+        if (!streamInfo) {
+            return null;
+        }
+        metadata.put("Content-Type", "audio/x-flac");
+        String artist = metadata.get("xmpDM:artist");
+        if (artist != null) {
+            metadata.put("dc:creator", artist);
+        }
+        return metadata;
+    }
+
+    private static void readStreamInfo(ByteBuffer info, Map<String, String> metadata) {
+        int b10 = info.get(10) & 0xFF;
+        int b11 = info.get(11) & 0xFF;
+        int b12 = info.get(12) & 0xFF;
+        int b13 = info.get(13) & 0xFF;
+
+        int sampleRate = b10 << 12 | b11 << 4 | b12 >> 4;
+        int channels = ((b12 >> 1) & 0x7) + 1;
+        int bitsPerSample = ((b12 & 0x1) << 4 | b13 >> 4) + 1;
+        metadata.put("xmpDM:audioSampleRate", Integer.toString(sampleRate));
+        metadata.put("channels", Integer.toString(channels));
+        metadata.put("bits", Integer.toString(bitsPerSample));
+    }
+
+    private static void readComments(ByteBuffer block, Map<String, String> metadata) {
+        ByteBuffer comments = block.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int vendorLength = comments.getInt();
+        comments.position(comments.position() + vendorLength);
+
+        int count = comments.getInt();
+        for (int i = 0; i < count && comments.remaining() >= 4; i++) {
+            int length = comments.getInt();
+            if (length < 0 || length > comments.remaining()) {
+                return;
+            }
+            byte[] bytes = new byte[length];
+            comments.get(bytes);
+
+            String comment = new String(bytes, StandardCharsets.UTF_8);
+            int separator = comment.indexOf('=');
+            if (separator <= 0) {
+                continue;
+            }
+            String key = COMMENT_KEYS.get(comment.substring(0, separator).toUpperCase(Locale.ROOT));
+            String value = comment.substring(separator + 1).trim();
+            if (key != null && !value.isEmpty()) {
+                metadata.putIfAbsent(key, value);
+            }
+        }
+    }
+}
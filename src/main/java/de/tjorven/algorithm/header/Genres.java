@@ -0,0 +1,47 @@
+package de.tjorven.algorithm.header;
+
+final class Genres {
+
+    private static final String[] ID3V1 = {
+            "Blues", "Classic Rock", "Country", "Dance", "Disco", "Funk", "Grunge", "Hip-Hop", "Jazz", "Metal",
+            "New Age", "Oldies", "Other", "Pop", "R&B", "Rap", "Reggae", "Rock", "Techno", "Industrial",
+            "Alternative", "Ska", "Death Metal", "Pranks", "Soundtrack", "Euro-Techno", "Ambient", "Trip-Hop", "Vocal", "Jazz+Funk",
+            "Fusion", "Trance", "Classical", "Instrumental", "Acid", "House", "Game", "Sound Clip", "Gospel", "Noise",
+            "AlternRock", "Bass", "Soul", "Punk", "Space", "Meditative", "Instrumental Pop", "Instrumental Rock", "Ethnic", "Gothic",
+            "Darkwave", "Techno-Industrial", "Electronic", "Pop-Folk", "Eurodance", "Dream", "Southern Rock", "Comedy", "Cult", "Gangsta",
+            "Top 40", "Christian Rap", "Pop/Funk", "Jungle", "Native American", "Cabaret", "New Wave", "Psychadelic", "Rave", "Showtunes",
+            "Trailer", "Lo-Fi", "Tribal", "Acid Punk", "Acid Jazz", "Polka", "Retro", "Musical", "Rock & Roll", "Hard Rock"
+    };
+
+    private Genres() {
+    }
+
+    static String byIndex(int index) {
+        return index >= 0 && index < ID3V1.length ? ID3V1[index] : null;
+    }
+
+    // ID3v2 allows "(17)", "17" or "(17)Rock"; anything else is already a name.
+    static String resolve(String value) {
+        String trimmed = value.trim();
+        if (trimmed.startsWith("(")) {
+            int close = trimmed.indexOf(')');
+            if (close > 1) {
+                String rest = trimmed.substring(close + 1).trim();
+                String name = byNumber(trimmed.substring(1, close));
+                if (!rest.isEmpty()) {
+                    return rest;
+                }
+                return name != null ? name : trimmed;
+            }
+        }
+        String name = byNumber(trimmed);
+        return name != null ? name : trimmed;
+    }
+
+    private static String byNumber(String value) {
+        if (value.isEmpty() || value.length() > 3 || !value.chars().allMatch(Character::isDigit)) {
+            return null;
+        }
+        return byIndex(Integer.parseInt(value));
+    }
+}
@@ -0,0 +1,6 @@
+package de.tjorven.algorithm.header;
+
+import java.util.Map;
+
+public record HeaderMetadata(String format, Map<String, String> metadata) {
+}
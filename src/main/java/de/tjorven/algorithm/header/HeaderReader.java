@@ -0,0 +1,50 @@
+package de.tjorven.algorithm.header;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Map;
+
+// Reads tags straight from the first few kilobytes of formats that keep them there,
+// so Tika only has to start up for everything else.
+public final class HeaderReader {
+
+    private static final Logger logger = LoggerFactory.getLogger(HeaderReader.class);
+
+    private HeaderReader() {
+    }
+
+    public static HeaderMetadata read(Path file) {
+        try (FileRegion region = FileRegion.open(file)) {
+            ByteBuffer head = region.head();
+            String format;
+            Map<String, String> metadata;
+            if (FlacReader.matches(head)) {
+                format = "FLAC";
+                metadata = FlacReader.read(region);
+            } else if (Mp4Reader.matches(head)) {
+                format = "MP4";
+                metadata = Mp4Reader.read(region);
+            } else if (ExifReader.matchesJpeg(head)) {
+                format = "JPEG";
+                metadata = ExifReader.readJpeg(region);
+            } else if (ExifReader.matchesTiff(head)) {
+                format = "TIFF";
+                metadata = ExifReader.readTiff(region);
+            } else if (Id3Reader.matches(head)) {
+                format = "MP3";
+                metadata = Id3Reader.read(region);
+            } else {
+                return null;
+            }
+            return metadata == null ? null : new HeaderMetadata(format, metadata);
+        } catch (IOException | RuntimeException e) {
+            // Truncated or unusual headers are left to Tika, which reports them properly.
+            logger.debug("Header fast path declined {}", file, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package de.tjorven.algorithm.header;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+final class Id3Reader {
+
+    private static final int SYNC_SEARCH_BYTES = 4096;
+    private static final int ID3V1_SIZE = 128;
+
+    private static final String[] LAYERS = {null, "III", "II", "I"};
+    private static final String[] VERSIONS = {"2.5", null, "2", "1"};
+    private static final int[][] SAMPLE_RATES = {
+            {11025, 12000, 8000},
+            null,
+            {22050, 24000, 16000},
+            {44100, 48000, 32000}
+    };
+
+    private static final Map<String, String> FRAME_KEYS = new HashMap<>();
+
+    static {
+        frame("dc:title", "TIT2", "TT2");
+        frame("xmpDM:artist", "TPE1", "TP1");
+        frame("xmpDM:album", "TALB", "TAL");
+        frame("xmpDM:albumArtist", "TPE2", "TP2");
+        frame("xmpDM:genre", "TCON", "TCO");
+        frame("xmpDM:releaseDate", "TYER", "TYE", "TDRC");
+        frame("xmpDM:trackNumber", "TRCK", "TRK");
+        frame("xmpDM:discNumber", "TPOS", "TPA");
+        frame("xmpDM:composer", "TCOM", "TCM");
+        frame("xmpDM:compilation", "TCMP", "TCP");
+    }
+
+    private Id3Reader() {
+    }
+
+    private static void frame(String key, String... ids) {
+        for (String id : ids) {
+            FRAME_KEYS.put(id, key);
+        }
+    }
+
+    static boolean matches(ByteBuffer head) {
+        if (head.limit() >= 3 && FileRegion.ascii(head, 0, 3).equals("ID3")) {
+            return true;
+        }
+        return head.limit() >= 4 && frameHeader(head.getInt(0)) != null;
+    }
+
+    static Map<String, String> read(FileRegion region) throws IOException {
+        Map<String, String> metadata = new LinkedHashMap<>();
+        ByteBuffer head = region.head();
+
+        long audioStart = 0;
+        if (head.limit() >= 10 && FileRegion.ascii(head, 0, 3).equals("ID3")) {
+            audioStart = readId3v2(region, head, metadata);
+            if (audioStart < 0) {
+                return null;
+            }
+        }
+        readId3v1(region, metadata);
+
+        String[] audio = findAudio(region, audioStart);
+        if (audio == null) {
+            return null;
+        }
+
+        metadata.put("Content-Type", "audio/mpeg");
+        metadata.put("xmpDM:audioCompressor", "MP3");
+        metadata.put("xmpDM:audioSampleRate", audio[0]);
+        metadata.put("channels", audio[1]);
+        metadata.put("version", audio[2]);
+        String artist = metadata.get("xmpDM:artist");
+        if (artist != null) {
+            metadata.put("dc:creator", artist);
+        }
+        return metadata;
+    }
+
+    private static long readId3v2(FileRegion region, ByteBuffer head, Map<String, String> metadata) throws IOException {
+        int major = head.get(3);
+        int flags = head.get(5) & 0xFF;
+        if (major < 2 || major > 4 || (flags & 0x80) != 0) {
+            // Unsynchronised tags need the whole tag rewritten first; Tika handles those.
+            return -1;
+        }
+
+        long end = 10L + synchsafe(head, 6);
+        long position = 10;
+        if (major >= 3 && (flags & 0x40) != 0) {
+            ByteBuffer extended = region.read(position, 4);
+            position += major == 4 ? synchsafe(extended, 0) : extended.getInt(0) + 4L;
+        }
+
+        int headerSize = major == 2 ? 6 : 10;
+        while (position + headerSize <= end) {
+            ByteBuffer header = region.read(position, headerSize);
+            if (header.get(0) == 0) {
+                break;
+            }
+
+            String id = FileRegion.ascii(header, 0, major == 2 ? 3 : 4);
+            int size;
+            boolean encoded;
+            if (major == 2) {
+                size = FileRegion.uint24(header, 3);
+                encoded = false;
+            } else {
+                size = major == 4 ? synchsafe(header, 4) : header.getInt(4);
+                int format = header.get(9) & 0xFF;
+                encoded = major == 4 ? (format & 0x4F) != 0 : (format & 0xC0) != 0;
+            }
+            if (size <= 0 || position + headerSize + size > end) {
+                break;
+            }
+
+            String key = FRAME_KEYS.get(id);
+            if (key != null && !encoded) {
+                String value = text(region.read(position + headerSize, size));
+                if (value != null && !value.isEmpty()) {
+                    metadata.put(key, key.equals("xmpDM:genre") ? Genres.resolve(value) : value);
+                }
+            }
+            position += headerSize + size;
+        }
+
+        boolean footer = major == 4 && (flags & 0x10) != 0;
+        return end + (footer ? 10 : 0);
+    }
+
+    private static void readId3v1(FileRegion region, Map<String, String> metadata) throws IOException {
+        if (region.size() < ID3V1_SIZE) {
+            return;
+        }
+        ByteBuffer tag = region.read(region.size() - ID3V1_SIZE, ID3V1_SIZE);
+        if (!FileRegion.ascii(tag, 0, 3).equals("TAG")) {
+            return;
+        }
+
+        putIfPresent(metadata, "dc:title", latin1(tag, 3, 30));
+        putIfPresent(metadata, "xmpDM:artist", latin1(tag, 33, 30));
+        putIfPresent(metadata, "xmpDM:album", latin1(tag, 63, 30));
+        putIfPresent(metadata, "xmpDM:releaseDate", latin1(tag, 93, 4));
+        if (tag.get(125) == 0 && tag.get(126) != 0) {
+            putIfPresent(metadata, "xmpDM:trackNumber", Integer.toString(tag.get(126) & 0xFF));
+        }
+        putIfPresent(metadata, "xmpDM:genre", Genres.byIndex(tag.get(127) & 0xFF));
+    }
+
+    private static String[] findAudio(FileRegion region, long start) throws IOException {
+        if (start >= region.size()) {
+            return null;
+        }
+        int length = (int) Math.min(SYNC_SEARCH_BYTES, region.size() - start);
+        ByteBuffer buffer = region.read(start, length);
+        for (int i = 0; i + 4 <= length; i++) {
+            if ((buffer.get(i) & 0xFF) == 0xFF) {
+                String[] audio = frameHeader(buffer.getInt(i));
+                if (audio != null) {
+                    return audio;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String[] frameHeader(int header) {
+        if ((header & 0xFFE00000) != 0xFFE00000) {
+            return null;
+        }
+        int version = (header >> 19) & 0x3;
+        int layer = (header >> 17) & 0x3;
+        int bitrate = (header >> 12) & 0xF;
+        int sampleRate = (header >> 10) & 0x3;
+        int channelMode = (header >> 6) & 0x3;
+        if (VERSIONS[version] == null || LAYERS[layer] == null || bitrate == 0xF || sampleRate == 0x3) {
+            return null;
+        }
+
+        return new String[]{
+                Integer.toString(SAMPLE_RATES[version][sampleRate]),
+                channelMode == 3 ? "1" : "2",
+                "MPEG 3 Layer " + LAYERS[layer] + " Version " + VERSIONS[version]
+        };
+    }
+
+    private static String text(ByteBuffer body) {
+        if (body.limit() < 1) {
+            return null;
+        }
+        Charset charset = switch (body.get(0)) {
+            case 0 -> StandardCharsets.ISO_8859_1;
+            case 1 -> StandardCharsets.UTF_16;
+            case 2 -> StandardCharsets.UTF_16BE;
+            case 3 -> StandardCharsets.UTF_8;
+            default -> null;
+        };
+        if (charset == null) {
+            return null;
+        }
+
+        byte[] bytes = new byte[body.limit() - 1];
+        body.get(1, bytes);
+        String value = new String(bytes, charset);
+        // ID3v2.4 separates multiple values with NUL; the first one is what Tika reports.
+        int terminator = value.indexOf('\0');
+        return (terminator >= 0 ? value.substring(0, terminator) : value).trim();
+    }
+
+    private static String latin1(ByteBuffer buffer, int offset, int length) {
+        String value = FileRegion.ascii(buffer, offset, length);
+        int terminator = value.indexOf('\0');
+        return (terminator >= 0 ? value.substring(0, terminator) : value).trim();
+    }
+
+    private static void putIfPresent(Map<String, String> metadata, String key, String value) {
+        if (value != null && !value.isEmpty()) {
+            metadata.putIfAbsent(key, value);
+        }
+    }
+
+    private static int synchsafe(ByteBuffer buffer, int offset) {
+        return (buffer.get(offset) & 0x7F) << 21 | (buffer.get(offset + 1) & 0x7F) << 14
+                | (buffer.get(offset + 2) & 0x7F) << 7 | buffer.get(offset + 3) & 0x7F;
+    }
+}
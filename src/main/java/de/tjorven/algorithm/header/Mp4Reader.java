@@ -0,0 +1,150 @@
+package de.tjorven.algorithm.header;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+final class Mp4Reader {
+
+    private static final int MAX_ILST_SIZE = 1024 * 1024;
+
+    private static final Map<String, String> ITEM_KEYS = Map.of(
+            "©nam", "dc:title",
+            "©ART", "xmpDM:artist",
+            "©alb", "xmpDM:album",
+            "aART", "xmpDM:albumArtist",
+            "©gen", "xmpDM:genre",
+            "©day", "xmpDM:releaseDate",
+            "©wrt", "xmpDM:composer"
+    );
+
+    private Mp4Reader() {
+    }
+
+    static boolean matches(ByteBuffer head) {
+        return head.limit() >= 12 && FileRegion.ascii(head, 4, 4).equals("ftyp");
+    }
+
+    static Map<String, String> read(FileRegion region) throws IOException {
+        Map<String, String> metadata = new LinkedHashMap<>();
+        metadata.put("Content-Type", contentType(FileRegion.ascii(region.head(), 8, 4)));
+
+        long[] moov = find(region, 0, region.size(), "moov");
+        if (moov == null) {
+            return null;
+        }
+        long[] udta = find(region, moov[0], moov[1], "udta");
+        long[] meta = udta == null ? null : find(region, udta[0], udta[1], "meta");
+        // meta is a full box: version and flags come before its children.
+        long[] ilst = meta == null ? null : find(region, meta[0] + 4, meta[1], "ilst");
+        if (ilst != null && ilst[1] - ilst[0] <= MAX_ILST_SIZE) {
+            readItems(region.read(ilst[0], (int) (ilst[1] - ilst[0])), metadata);
+        }
+
+        String artist = metadata.get("xmpDM:artist");
+        if (artist != null) {
+            metadata.put("dc:creator", artist);
+        }
+        return metadata;
+    }
+
+    // Returns {bodyStart, bodyEnd} of the first child atom with the given type.
+    private static long[] find(FileRegion region, long start, long end, String type) throws IOException {
+        long position = start;
+        while (position + 8 <= end) {
+            ByteBuffer header = region.read(position, 8);
+            long size = FileRegion.uint32(header, 0);
+            int headerSize = 8;
+            if (size == 1) {
+                size = region.read(position + 8, 8).getLong(0);
+                headerSize = 16;
+            } else if (size == 0) {
+                size = end - position;
+            }
+            if (size < headerSize || position + size > end) {
+                return null;
+            }
+
+            if (FileRegion.ascii(header, 4, 4).equals(type)) {
+                return new long[]{position + headerSize, position + size};
+            }
+            position += size;
+        }
+        return null;
+    }
+
+    private static void readItems(ByteBuffer ilst, Map<String, String> metadata) {
+        int position = 0;
+        while (position + 8 <= ilst.limit()) {
+            int size = ilst.getInt(position);
+            if (size < 8 || position + size > ilst.limit()) {
+                return;
+            }
+            String name = FileRegion.ascii(ilst, position + 4, 4);
+            ByteBuffer data = data(ilst, position + 8, position + size);
+            if (data != null) {
+                item(name, data, metadata);
+            }
+            position += size;
+        }
+    }
+
+    private static ByteBuffer data(ByteBuffer ilst, int start, int end) {
+        if (start + 16 > end || !FileRegion.ascii(ilst, start + 4, 4).equals("data")) {
+            return null;
+        }
+        int size = ilst.getInt(start);
+        if (size < 16 || start + size > end) {
+            return null;
+        }
+        // data atom: size, "data", type indicator, locale, payload.
+        return ilst.duplicate().position(start + 16).limit(start + size).slice();
+    }
+
+    private static void item(String name, ByteBuffer data, Map<String, String> metadata) {
+        switch (name) {
+            case "trkn" -> putPair(metadata, "xmpDM:trackNumber", data);
+            case "disk" -> putPair(metadata, "xmpDM:discNumber", data);
+            case "gnre" -> {
+                if (data.limit() >= 2) {
+                    String genre = Genres.byIndex(FileRegion.uint16(data, 0) - 1);
+                    if (genre != null) {
+                        metadata.putIfAbsent("xmpDM:genre", genre);
+                    }
+                }
+            }
+            default -> {
+                String key = ITEM_KEYS.get(name);
+                if (key != null) {
+                    byte[] bytes = new byte[data.limit()];
+                    data.get(0, bytes);
+                    String value = new String(bytes, StandardCharsets.UTF_8).trim();
+                    if (!value.isEmpty()) {
+                        metadata.put(key, value);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void putPair(Map<String, String> metadata, String key, ByteBuffer data) {
+        if (data.limit() >= 4) {
+            int number = FileRegion.uint16(data, 2);
+            if (number > 0) {
+                metadata.put(key, Integer.toString(number));
+            }
+        }
+    }
+
+    private static String contentType(String brand) {
+        return switch (brand) {
+            case "M4A ", "M4B ", "M4P ", "F4A " -> "audio/mp4";
+            case "qt  " -> "video/quicktime";
+            case "3gp4", "3gp5", "3gp6", "3ge6", "3gg6" -> "video/3gpp";
+            case "3g2a", "3g2b", "3g2c" -> "video/3gpp2";
+            default -> "video/mp4";
+        };
+    }
+}
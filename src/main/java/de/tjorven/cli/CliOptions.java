@@ -0,0 +1,218 @@
+package de.tjorven.cli;
+
+import de.tjorven.algorithm.ConflictPolicy;
+import de.tjorven.algorithm.DuplicatePolicy;
+import de.tjorven.algorithm.StorageProfile;
+import lombok.Getter;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+@Getter
+class CliOptions {
+
+    private Path folder;
+    private Path target;
+    private final List<String> attributes = new ArrayList<>();
+    private final List<String> extensions = new ArrayList<>();
+    private final List<String> includes = new ArrayList<>();
+    private final List<String> excludes = new ArrayList<>();
+    private boolean recursive;
+    private int maxDepth = Integer.MAX_VALUE;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private Integer moveParallelism;
+    private Integer maxInFlight;
+    private boolean verify;
+    private StorageProfile storage;
+    private Integer readConcurrency;
+    private Integer parseConcurrency;
+    private int workers;
+    private Integer workerHeapMegabytes;
+    private boolean fullText;
+    private boolean noFastPath;
+    private boolean allMetadata;
+    private boolean metrics;
+    private Integer timeoutSeconds;
+    private Integer maxMegabytes;
+    private Integer maxEmbedded;
+    private ConflictPolicy conflictPolicy = ConflictPolicy.RENAME;
+    private DuplicatePolicy duplicatePolicy = DuplicatePolicy.KEEP;
+    private boolean dryRun;
+    private String revert;
+    private String resume;
+    private boolean listJournals;
+    private boolean watch;
+    private Path config;
+    private Integer quietPeriodMillis;
+    private Integer batchSize;
+    private boolean warmUp;
+    private boolean help;
+
+    static CliOptions parse(String[] args) {
+        CliOptions options = new CliOptions();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--folder", "-f" -> options.folder = Paths.get(value(args, ++i, arg));
+                case "--target", "-t" -> options.target = Paths.get(value(args, ++i, arg));
+                case "--attributes", "-a" -> options.attributes.addAll(split(value(args, ++i, arg)));
+                case "--extensions", "-e" -> split(value(args, ++i, arg)).forEach(ext ->
+                        options.extensions.add(ext.startsWith(".") ? ext : "." + ext));
+                case "--include" -> options.includes.add(value(args, ++i, arg));
+                case "--exclude" -> options.excludes.add(value(args, ++i, arg));
+                case "--recursive", "-r" -> options.recursive = true;
+                case "--max-depth" -> options.maxDepth = number(value(args, ++i, arg), arg);
+                case "--parallelism", "-p" -> options.parallelism = number(value(args, ++i, arg), arg);
+                case "--move-parallelism" -> options.moveParallelism = number(value(args, ++i, arg), arg);
+                case "--max-in-flight" -> options.maxInFlight = number(value(args, ++i, arg), arg);
+                case "--storage" -> options.storage = storage(value(args, ++i, arg));
+                case "--network" -> options.storage = StorageProfile.NETWORK;
+                case "--read-concurrency" -> options.readConcurrency = number(value(args, ++i, arg), arg);
+                case "--parse-concurrency" -> options.parseConcurrency = number(value(args, ++i, arg), arg);
+                case "--workers" -> options.workers = number(value(args, ++i, arg), arg);
+                case "--worker-heap" -> options.workerHeapMegabytes = number(value(args, ++i, arg), arg);
+                case "--verify" -> options.verify = true;
+                case "--full-text" -> options.fullText = true;
+                case "--no-fast-path" -> options.noFastPath = true;
+                case "--all-metadata" -> options.allMetadata = true;
+                case "--metrics" -> options.metrics = true;
+                case "--timeout" -> options.timeoutSeconds = number(value(args, ++i, arg), arg);
+                case "--max-megabytes" -> options.maxMegabytes = number(value(args, ++i, arg), arg);
+                case "--max-embedded" -> options.maxEmbedded = number(value(args, ++i, arg), arg);
+                case "--on-conflict" -> options.conflictPolicy = conflictPolicy(value(args, ++i, arg));
+                case "--duplicates" -> options.duplicatePolicy = duplicatePolicy(value(args, ++i, arg));
+                case "--dry-run", "-n" -> options.dryRun = true;
+                case "--revert" -> options.revert = value(args, ++i, arg);
+                case "--resume" -> options.resume = value(args, ++i, arg);
+                case "--list-journals" -> options.listJournals = true;
+                case "--watch", "-w" -> options.watch = true;
+                case "--config" -> options.config = Paths.get(value(args, ++i, arg));
+                case "--quiet-period" -> options.quietPeriodMillis = number(value(args, ++i, arg), arg);
+                case "--batch-size" -> options.batchSize = number(value(args, ++i, arg), arg);
+                case "--warm-up" -> options.warmUp = true;
+                case "--help", "-h" -> options.help = true;
+                default -> throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        boolean configured = options.watch && options.config != null;
+        if (!options.help && !options.warmUp && !options.listJournals && options.revert == null && options.resume == null && !configured) {
+            if (options.folder == null) {
+                throw new IllegalArgumentException("Missing required option --folder");
+            }
+            if (options.attributes.isEmpty()) {
+                throw new IllegalArgumentException("Missing required option --attributes");
+            }
+        }
+        return options;
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    private static int number(String value, String option) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected a number for " + option + ": " + value);
+        }
+    }
+
+    private static ConflictPolicy conflictPolicy(String value) {
+        try {
+            return ConflictPolicy.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Expected rename, skip or overwrite for --on-conflict: " + value);
+        }
+    }
+
+    private static DuplicatePolicy duplicatePolicy(String value) {
+        try {
+            return DuplicatePolicy.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Expected keep, skip, link or folder for --duplicates: " + value);
+        }
+    }
+
+    private static StorageProfile storage(String value) {
+        try {
+            return StorageProfile.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Expected hdd, ssd or network for --storage: " + value);
+        }
+    }
+
+    private static List<String> split(String value) {
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(part -> !part.isEmpty())
+                .toList();
+    }
+
+    static String usage() {
+        return """
+                Usage: java -jar FileSorter.jar [options]
+                Without options the graphical interface is started.
+
+                Sorting:
+                  -f, --folder <dir>          folder to analyse and sort
+                  -t, --target <dir>          build the hierarchy here instead of inside the folder;
+                                              may be on another volume
+                  -a, --attributes <a,b,...>  metadata attributes forming the folder hierarchy
+                  -e, --extensions <x,y,...>  only sort files with these extensions
+                  -r, --recursive             include subfolders
+                      --max-depth <n>         limit recursion depth
+                      --include <glob>        only include matching files (repeatable)
+                      --exclude <glob>        skip matching files and folders (repeatable)
+                  -p, --parallelism <n>       analysis threads
+                      --move-parallelism <n>  move threads
+                      --max-in-flight <n>     upper bound for concurrent move operations
+                      --storage <kind>        hdd, ssd or network; sets where read, parse and move
+                                              concurrency start and how far it may adapt (default:
+                                              network for network shares, ssd otherwise)
+                      --network               same as --storage network
+                      --read-concurrency <n>  fix the number of concurrent file reads
+                      --parse-concurrency <n> fix the number of concurrent parses
+                      --workers <n>           parse in this many separate processes, each with its own heap;
+                                              a crashing parser then only costs a retry (default 0: parse here)
+                      --worker-heap <mb>      maximum heap of each worker process (default 512)
+                      --verify                compare checksums before deleting a source that was
+                                              copied to another volume
+                      --full-text             also extract document body text
+                      --no-fast-path          always parse with Tika, even for MP3, FLAC, MP4, JPEG and TIFF
+                      --all-metadata          parse every file completely, not just for the chosen attributes
+                      --metrics               report parse times per type and parser and the slowest files
+                      --timeout <seconds>     give up on a single file after this long (default 30)
+                      --max-megabytes <n>     give up on a file once this much of it was read (default 512)
+                      --max-embedded <n>      give up on a file with more embedded documents (default 100)
+                      --on-conflict <policy>  rename (default), skip or overwrite when a target name is taken
+                      --duplicates <policy>   keep (default), skip, link or folder for files with identical
+                                              content; any other policy hashes files with the same size
+                  -n, --dry-run               print the planned moves without touching files
+
+                Watch folder:
+                  -w, --watch                 keep running and sort new files as they arrive
+                      --config <file>         load folder, attributes and extensions from a properties
+                                              file; options given on the command line are saved back
+                      --quiet-period <ms>     wait until a file is unchanged for this long (default 2000)
+                      --batch-size <n>        sort at most this many files per batch (default 50)
+
+                Journals:
+                      --list-journals         list recorded sort operations
+                      --revert <file|last>    revert a recorded sort operation
+                      --resume <file|last>    resume an interrupted sort operation
+
+                Start-up:
+                      --warm-up               only load Tika and exit; the cdsArchive Gradle task runs
+                                              this to record a class data sharing archive
+                """;
+    }
+}
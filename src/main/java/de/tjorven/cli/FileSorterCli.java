@@ -0,0 +1,381 @@
+package de.tjorven.cli;
+
+import de.tjorven.algorithm.*;
+import de.tjorven.metrics.AnalysisMetrics;
+import de.tjorven.metrics.MetricsSnapshot;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+public final class FileSorterCli {
+
+    private FileSorterCli() {
+    }
+
+    public static int run(String[] args) {
+        return run(args, System.out, System.err);
+    }
+
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        CliOptions options;
+        try {
+            options = CliOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.print(CliOptions.usage());
+            return 2;
+        }
+
+        if (options.isHelp()) {
+            out.print(CliOptions.usage());
+            return 0;
+        }
+
+        try {
+            if (options.isWatch()) {
+                return watch(options, out);
+            }
+
+            Map<String, Object> summary;
+            if (options.isWarmUp()) {
+                summary = warmUp();
+            } else if (options.isListJournals()) {
+                summary = listJournals();
+            } else if (options.getRevert() != null) {
+                summary = revert(options);
+            } else if (options.getResume() != null) {
+                summary = resume(options);
+            } else {
+                summary = sort(options);
+            }
+
+            summary.put("jvmUptimeMillis", ManagementFactory.getRuntimeMXBean().getUptime());
+            out.println(Json.write(summary));
+            return 0;
+        } catch (IOException | RuntimeException e) {
+            Map<String, Object> failure = new LinkedHashMap<>();
+            failure.put("error", e.getMessage() != null ? e.getMessage() : e.toString());
+            out.println(Json.write(failure));
+            return 1;
+        }
+    }
+
+    private static Map<String, Object> warmUp() throws IOException {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("command", "warm-up");
+        summary.put("millis", TikaParserPool.warmUp().toMillis());
+        return summary;
+    }
+
+    private static Map<String, Object> sort(CliOptions options) throws IOException {
+        TikaParserPool.prewarm();
+        Path folder = options.getFolder().toAbsolutePath().normalize();
+        AnalysisOptions analysisOptions = analysisOptions(options);
+
+        FolderAnalyser analyser = new FolderAnalyser(folder, analysisOptions);
+        AtomicReference<AnalysisProgress> lastProgress = new AtomicReference<>();
+        long analysisStart = System.nanoTime();
+        analyser.analyse(new AnalysisListener() {
+            @Override
+            public void onProgress(AnalysisProgress progress) {
+                lastProgress.set(progress);
+            }
+        });
+        long analysisMillis = (System.nanoTime() - analysisStart) / 1_000_000;
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("command", options.isDryRun() ? "dry-run" : "sort");
+        summary.put("folder", folder.toString());
+        summary.put("target", options.getTarget() != null ? options.getTarget().toAbsolutePath().normalize().toString() : folder.toString());
+        summary.put("attributes", options.getAttributes());
+        summary.put("extensions", options.getExtensions());
+
+        Map<String, Object> analysis = new LinkedHashMap<>();
+        AnalysisProgress progress = lastProgress.get();
+        analysis.put("files", analyser.getStore().size());
+        analysis.put("bytes", progress != null ? progress.bytesDone() : 0);
+        analysis.put("millis", analysisMillis);
+        analysis.put("filesPerSecond", progress != null ? progress.filesPerSecond() : 0.0);
+        analysis.put("firstFileMillis", progress != null && progress.firstFileAfter() != null ? progress.firstFileAfter().toMillis() : null);
+        analysis.put("firstFileSinceLaunchMillis", progress != null && progress.firstFileSinceLaunch() != null
+                ? progress.firstFileSinceLaunch().toMillis() : null);
+        analysis.put("bytesPerSecond", progress != null ? progress.bytesPerSecond() : 0.0);
+        analysis.put("skipped", analyser.getSkippedFiles().entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(skipped -> List.of(skipped.getKey(), skipped.getValue().getDescription()))
+                .toList());
+        if (options.getDuplicatePolicy() != DuplicatePolicy.KEEP) {
+            analysis.put("duplicateGroups", analyser.getStore().duplicateGroups().size());
+        }
+        analysis.put("storage", analysisOptions.getStorage().name().toLowerCase(Locale.ROOT));
+        analysis.put("readConcurrency", analyser.getReadLimiter().getLimit());
+        analysis.put("parseConcurrency", analyser.getParseLimiter().getLimit());
+        analysis.put("workers", analysisOptions.getWorkers());
+        if (options.isMetrics()) {
+            analysis.put("metrics", describe(analyser.getMetrics().snapshot()));
+        }
+        summary.put("analysis", analysis);
+
+        RecursiveSorter sorter = new RecursiveSorter(folder.toString(), analyser.getStore());
+        sorter.setMoveOptions(moveOptions(options));
+        sorter.setConflictPolicy(options.getConflictPolicy());
+        sorter.setDuplicatePolicy(options.getDuplicatePolicy());
+        sorter.setTargetRoot(options.getTarget());
+
+        long planStart = System.nanoTime();
+        SortPlan sortPlan = sorter.plan(folder, options.getAttributes(), options.getExtensions());
+        Map<String, Object> plan = new LinkedHashMap<>();
+        plan.put("planned", sortPlan.getSize());
+        plan.put("millis", (System.nanoTime() - planStart) / 1_000_000);
+        plan.put("conflictPolicy", sortPlan.getConflictPolicy().name().toLowerCase(Locale.ROOT));
+        plan.put("conflicts", sortPlan.getConflicts().stream().map(FileSorterCli::describe).toList());
+        plan.put("duplicatePolicy", sortPlan.getDuplicatePolicy().name().toLowerCase(Locale.ROOT));
+        plan.put("duplicates", sortPlan.getDuplicates().stream().map(FileSorterCli::describe).toList());
+        if (options.isDryRun()) {
+            plan.put("moves", sortPlan.moves().stream().map(move -> List.of(move.source().toString(), move.target().toString())).toList());
+            summary.put("plan", plan);
+            return summary;
+        }
+        summary.put("plan", plan);
+
+        MoveStats stats = sorter.execute(sortPlan);
+        summary.put("sort", describe(stats));
+        summary.put("journal", sorter.getLastJournal() != null ? sorter.getLastJournal().toString() : null);
+        return summary;
+    }
+
+    private static int watch(CliOptions options, PrintStream out) throws IOException {
+        TikaParserPool.prewarm();
+        WatchConfig.WatchConfigBuilder builder = options.getConfig() != null && Files.exists(options.getConfig())
+                ? WatchConfig.load(options.getConfig()).toBuilder()
+                : WatchConfig.builder();
+        if (options.getFolder() != null) {
+            builder.folder(options.getFolder().toAbsolutePath().normalize());
+        }
+        if (options.getTarget() != null) {
+            builder.target(options.getTarget().toAbsolutePath().normalize());
+        }
+        if (!options.getAttributes().isEmpty()) {
+            builder.attributes(options.getAttributes());
+        }
+        if (!options.getExtensions().isEmpty()) {
+            builder.extensions(options.getExtensions());
+        }
+        if (options.getQuietPeriodMillis() != null) {
+            builder.quietPeriod(Duration.ofMillis(options.getQuietPeriodMillis()));
+        }
+        if (options.getBatchSize() != null) {
+            builder.batchSize(Math.max(1, options.getBatchSize()));
+        }
+        WatchConfig config = builder
+                .analysisOptions(analysisOptions(options))
+                .moveOptions(moveOptions(options))
+                .build();
+
+        if (config.getFolder() == null || config.getAttributes().isEmpty()) {
+            throw new IllegalArgumentException("Watching needs a folder and attributes, either as options or in the config file");
+        }
+        if (options.getConfig() != null) {
+            config.save(options.getConfig());
+        }
+
+        WatchDaemon daemon = new WatchDaemon(config);
+        daemon.setListener((files, stats, journal) -> {
+            Map<String, Object> batch = new LinkedHashMap<>();
+            batch.put("command", "watch");
+            batch.put("files", files);
+            batch.put("sort", describe(stats));
+            batch.put("journal", journal != null ? journal.toString() : null);
+            out.println(Json.write(batch));
+            out.flush();
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(daemon::stop, "watch-shutdown"));
+        daemon.run();
+        return 0;
+    }
+
+    private static Map<String, Object> revert(CliOptions options) throws IOException {
+        SortJournal.Replay replay = findJournal(options.getRevert());
+        RecursiveSorter sorter = new RecursiveSorter(replay.rootPath().toString(), new MetadataStore());
+        sorter.setMoveOptions(moveOptions(options));
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("command", "revert");
+        summary.put("journal", replay.file().toString());
+        summary.put("revert", describe(sorter.revert(replay)));
+        return summary;
+    }
+
+    private static Map<String, Object> resume(CliOptions options) throws IOException {
+        SortJournal.Replay replay = findJournal(options.getResume());
+        RecursiveSorter sorter = new RecursiveSorter(replay.rootPath().toString(), new MetadataStore());
+        sorter.setMoveOptions(moveOptions(options));
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("command", "resume");
+        summary.put("journal", replay.file().toString());
+        summary.put("sort", describe(sorter.resume(replay)));
+        return summary;
+    }
+
+    private static Map<String, Object> listJournals() {
+        List<Map<String, Object>> journals = new ArrayList<>();
+        for (SortJournal.Replay replay : SortJournal.list()) {
+            Map<String, Object> journal = new LinkedHashMap<>();
+            journal.put("file", replay.file().toString());
+            journal.put("folder", replay.rootPath().toString());
+            journal.put("target", replay.targetRoot().toString());
+            journal.put("createdAt", replay.createdAt().toString());
+            journal.put("attributes", replay.attributes());
+            journal.put("moves", replay.moves().size());
+            journal.put("status", replay.status());
+            journals.add(journal);
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("command", "list-journals");
+        summary.put("journals", journals);
+        return summary;
+    }
+
+    private static SortJournal.Replay findJournal(String reference) throws IOException {
+        if ("last".equals(reference)) {
+            return SortJournal.list().stream()
+                    .findFirst()
+                    .orElseThrow(() -> new IOException("No sort operations recorded"));
+        }
+        return SortJournal.read(Paths.get(reference));
+    }
+
+    private static AnalysisOptions analysisOptions(CliOptions options) {
+        WalkOptions walkOptions = WalkOptions.builder()
+                .recursive(options.isRecursive())
+                .maxDepth(options.getMaxDepth())
+                .includes(options.getIncludes())
+                .excludes(options.getExcludes())
+                .parallelism(options.getParallelism())
+                .build();
+        ParseLimits.ParseLimitsBuilder limits = ParseLimits.builder();
+        if (options.getTimeoutSeconds() != null) {
+            limits.timeout(Duration.ofSeconds(options.getTimeoutSeconds()));
+        }
+        if (options.getMaxMegabytes() != null) {
+            limits.maxBytes(options.getMaxMegabytes() * 1024L * 1024L);
+        }
+        if (options.getMaxEmbedded() != null) {
+            limits.maxEmbeddedDocuments(options.getMaxEmbedded());
+        }
+        AnalysisOptions.AnalysisOptionsBuilder builder = AnalysisOptions.builder()
+                .mode(options.isFullText() ? AnalysisMode.FULL_TEXT : AnalysisMode.METADATA_ONLY)
+                .walkOptions(walkOptions)
+                .limits(limits.build())
+                .headerFastPath(!options.isNoFastPath())
+                .detectDuplicates(options.getDuplicatePolicy() != DuplicatePolicy.KEEP)
+                .storage(storage(options))
+                .workers(Math.max(0, options.getWorkers()))
+                .collectMetrics(options.isMetrics());
+        if (options.getWorkerHeapMegabytes() != null) {
+            builder.workerHeapMegabytes(options.getWorkerHeapMegabytes());
+        }
+        if (options.getReadConcurrency() != null) {
+            builder.readStage(StageLimits.fixed(options.getReadConcurrency()));
+        }
+        if (options.getParseConcurrency() != null) {
+            builder.parseStage(StageLimits.fixed(options.getParseConcurrency()));
+        }
+        if (!options.isAllMetadata()) {
+            builder.requiredAttributes(options.getAttributes()).extensions(options.getExtensions());
+        }
+        return builder.build();
+    }
+
+    private static MoveOptions moveOptions(CliOptions options) {
+        MoveOptions.MoveOptionsBuilder builder = MoveOptions.forStorage(storage(options)).toBuilder();
+        if (options.getMoveParallelism() != null) {
+            builder.parallelism(options.getMoveParallelism());
+        }
+        if (options.getMaxInFlight() != null) {
+            builder.maxInFlight(options.getMaxInFlight());
+        }
+        return builder.verifyTransfers(options.isVerify()).build();
+    }
+
+    private static StorageProfile storage(CliOptions options) {
+        if (options.getStorage() != null) {
+            return options.getStorage();
+        }
+        return options.getFolder() != null ? StorageProfile.detect(options.getFolder()) : StorageProfile.SSD;
+    }
+
+    private static Map<String, Object> describe(SortPlan.Duplicate duplicate) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("source", duplicate.source().toString());
+        result.put("target", duplicate.target() != null ? duplicate.target().toString() : null);
+        result.put("original", duplicate.original().toString());
+        return result;
+    }
+
+    private static Map<String, Object> describe(SortPlan.Conflict conflict) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("target", conflict.target().toString());
+        result.put("sources", conflict.sources().stream().map(Path::toString).toList());
+        result.put("existingFile", conflict.existingFile());
+        return result;
+    }
+
+    private static Map<String, Object> describe(MetricsSnapshot snapshot) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("cacheHits", snapshot.cacheHits());
+        result.put("types", snapshot.types().stream().map(FileSorterCli::describe).toList());
+        result.put("parsers", snapshot.parsers().stream().map(FileSorterCli::describe).toList());
+        result.put("slowest", snapshot.slowest().stream().map(timing -> {
+            Map<String, Object> file = new LinkedHashMap<>();
+            file.put("file", timing.fileKey());
+            file.put("mimeType", timing.mimeType());
+            file.put("bytes", timing.bytes());
+            file.put("millis", timing.duration().toMillis());
+            file.put("failed", timing.failed());
+            return file;
+        }).toList());
+        return result;
+    }
+
+    private static Map<String, Object> describe(MetricsSnapshot.Summary summary) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("name", summary.name());
+        result.put("files", summary.files());
+        result.put("failures", summary.failures());
+        result.put("bytes", summary.bytes());
+        result.put("totalMillis", summary.totalTime().toMillis());
+        result.put("averageMillis", summary.averageTime().toNanos() / 1e6);
+        result.put("maxMillis", summary.maxTime().toMillis());
+        Map<String, Object> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < summary.histogram().length; i++) {
+            if (summary.histogram()[i] > 0) {
+                histogram.put(AnalysisMetrics.bucketLabel(i), summary.histogram()[i]);
+            }
+        }
+        result.put("histogram", histogram);
+        return result;
+    }
+
+    private static Map<String, Object> describe(MoveStats stats) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("moved", stats.moved());
+        result.put("skipped", stats.skipped());
+        result.put("failed", stats.failed());
+        result.put("directoriesCreated", stats.directoriesCreated());
+        result.put("transferred", stats.transferred());
+        result.put("linked", stats.linked());
+        result.put("millis", stats.elapsed().toMillis());
+        result.put("filesPerSecond", stats.filesPerSecond());
+        return result;
+    }
+}
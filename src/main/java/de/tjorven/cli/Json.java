@@ -0,0 +1,76 @@
+package de.tjorven.cli;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+
+final class Json {
+
+    private Json() {
+    }
+
+    static String write(Object value) {
+        StringBuilder builder = new StringBuilder();
+        append(builder, value);
+        return builder.toString();
+    }
+
+    private static void append(StringBuilder builder, Object value) {
+        if (value == null) {
+            builder.append("null");
+        } else if (value instanceof Map<?, ?> map) {
+            builder.append('{');
+            Iterator<? extends Map.Entry<?, ?>> iterator = map.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<?, ?> entry = iterator.next();
+                appendString(builder, String.valueOf(entry.getKey()));
+                builder.append(':');
+                append(builder, entry.getValue());
+                if (iterator.hasNext()) {
+                    builder.append(',');
+                }
+            }
+            builder.append('}');
+        } else if (value instanceof Collection<?> collection) {
+            builder.append('[');
+            Iterator<?> iterator = collection.iterator();
+            while (iterator.hasNext()) {
+                append(builder, iterator.next());
+                if (iterator.hasNext()) {
+                    builder.append(',');
+                }
+            }
+            builder.append(']');
+        } else if (value instanceof Double || value instanceof Float) {
+            double number = ((Number) value).doubleValue();
+            builder.append(Double.isFinite(number) ? String.format(Locale.ROOT, "%.3f", number) : "null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            builder.append(value);
+        } else {
+            appendString(builder, value.toString());
+        }
+    }
+
+    private static void appendString(StringBuilder builder, String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> builder.append("\\\"");
+                case '\\' -> builder.append("\\\\");
+                case '\n' -> builder.append("\\n");
+                case '\r' -> builder.append("\\r");
+                case '\t' -> builder.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+                }
+            }
+        }
+        builder.append('"');
+    }
+}
@@ -0,0 +1,127 @@
+package de.tjorven.metrics;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+public class AnalysisMetrics {
+
+    public static final int SLOWEST_LIMIT = 20;
+
+    // Bucket i counts parses below 2^i ms, the last bucket everything slower.
+    public static final int HISTOGRAM_BUCKETS = 16;
+
+    private static final String UNKNOWN = "unknown";
+
+    private final boolean enabled;
+    private final Map<String, Counters> byType = new ConcurrentHashMap<>();
+    private final Map<String, Counters> byParser = new ConcurrentHashMap<>();
+    private final LongAdder cacheHits = new LongAdder();
+
+    private final PriorityQueue<MetricsSnapshot.FileTiming> slowest =
+            new PriorityQueue<>(Comparator.comparing(MetricsSnapshot.FileTiming::duration));
+    private volatile long slowestThresholdNanos;
+
+    public AnalysisMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    public void recordCacheHit() {
+        if (this.enabled) {
+            this.cacheHits.increment();
+        }
+    }
+
+    public void recordParse(String fileKey, String mimeType, String parser, long bytes, long nanos, boolean failed) {
+        if (!this.enabled) {
+            return;
+        }
+
+        String type = mimeType == null ? UNKNOWN : stripParameters(mimeType);
+        this.byType.computeIfAbsent(type, key -> new Counters()).add(bytes, nanos, failed);
+        this.byParser.computeIfAbsent(parser == null ? UNKNOWN : parser, key -> new Counters()).add(bytes, nanos, failed);
+
+        if (nanos > this.slowestThresholdNanos) {
+            synchronized (this.slowest) {
+                this.slowest.add(new MetricsSnapshot.FileTiming(fileKey, type, bytes, Duration.ofNanos(nanos), failed));
+                if (this.slowest.size() > SLOWEST_LIMIT) {
+                    this.slowest.poll();
+                }
+                if (this.slowest.size() == SLOWEST_LIMIT) {
+                    this.slowestThresholdNanos = this.slowest.peek().duration().toNanos();
+                }
+            }
+        }
+    }
+
+    public MetricsSnapshot snapshot() {
+        List<MetricsSnapshot.FileTiming> slowestFiles;
+        synchronized (this.slowest) {
+            slowestFiles = new ArrayList<>(this.slowest);
+        }
+        slowestFiles.sort(Comparator.comparing(MetricsSnapshot.FileTiming::duration).reversed());
+        return new MetricsSnapshot(summarise(this.byType), summarise(this.byParser), slowestFiles, this.cacheHits.sum());
+    }
+
+    public static String bucketLabel(int bucket) {
+        if (bucket == HISTOGRAM_BUCKETS - 1) {
+            return ">= " + (1L << (bucket - 1)) + " ms";
+        }
+        return "< " + (1L << bucket) + " ms";
+    }
+
+    private static List<MetricsSnapshot.Summary> summarise(Map<String, Counters> counters) {
+        List<MetricsSnapshot.Summary> summaries = new ArrayList<>(counters.size());
+        counters.forEach((name, counter) -> summaries.add(counter.summary(name)));
+        summaries.sort(Comparator.comparing(MetricsSnapshot.Summary::totalTime).reversed());
+        return summaries;
+    }
+
+    private static String stripParameters(String mimeType) {
+        int separator = mimeType.indexOf(';');
+        return separator < 0 ? mimeType : mimeType.substring(0, separator).trim();
+    }
+
+    private static int bucket(long nanos) {
+        long millis = nanos / 1_000_000;
+        int bucket = 64 - Long.numberOfLeadingZeros(millis);
+        return Math.min(bucket, HISTOGRAM_BUCKETS - 1);
+    }
+
+    private static final class Counters {
+
+        private final LongAdder files = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+        private void add(long bytes, long nanos, boolean failed) {
+            this.files.increment();
+            if (failed) {
+                this.failures.increment();
+            }
+            this.bytes.add(Math.max(0, bytes));
+            this.nanos.add(nanos);
+            this.maxNanos.accumulate(nanos);
+            this.histogram.incrementAndGet(bucket(nanos));
+        }
+
+        private MetricsSnapshot.Summary summary(String name) {
+            long[] buckets = new long[HISTOGRAM_BUCKETS];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = this.histogram.get(i);
+            }
+            return new MetricsSnapshot.Summary(name, this.files.sum(), this.failures.sum(), this.bytes.sum(),
+                    Duration.ofNanos(this.nanos.sum()), Duration.ofNanos(this.maxNanos.get()), buckets);
+        }
+    }
+}
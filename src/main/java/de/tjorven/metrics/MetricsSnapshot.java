@@ -0,0 +1,62 @@
+package de.tjorven.metrics;
+
+import java.time.Duration;
+import java.util.List;
+
+public record MetricsSnapshot(List<Summary> types, List<Summary> parsers, List<FileTiming> slowest, long cacheHits) {
+
+    public String format() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("%d files served from the index%n%n", this.cacheHits));
+
+        text.append("By type\n");
+        this.types.forEach(summary -> text.append(summary.format()).append(summary.formatHistogram()).append('\n'));
+
+        text.append("\nBy parser\n");
+        this.parsers.forEach(summary -> text.append(summary.format()).append('\n'));
+
+        text.append("\nSlowest files\n");
+        for (FileTiming timing : this.slowest) {
+            text.append(String.format("%8d ms  %10s  %-28s %s%s%n", timing.duration().toMillis(), formatBytes(timing.bytes()),
+                    timing.mimeType(), timing.fileKey(), timing.failed() ? "  (failed)" : ""));
+        }
+        return text.toString();
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024));
+    }
+
+    public record Summary(String name, long files, long failures, long bytes, Duration totalTime, Duration maxTime,
+                          long[] histogram) {
+
+        public Duration averageTime() {
+            return this.files == 0 ? Duration.ZERO : this.totalTime.dividedBy(this.files);
+        }
+
+        public String format() {
+            return String.format("  %-40s %6d files  %4d failed  %10s  total %7d ms  avg %6.1f ms  max %6d ms",
+                    this.name, this.files, this.failures, formatBytes(this.bytes), this.totalTime.toMillis(),
+                    this.averageTime().toNanos() / 1e6, this.maxTime.toMillis());
+        }
+
+        public String formatHistogram() {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < this.histogram.length; i++) {
+                if (this.histogram[i] > 0) {
+                    text.append(String.format("%n      %-12s %d", AnalysisMetrics.bucketLabel(i), this.histogram[i]));
+                }
+            }
+            return text.toString();
+        }
+    }
+
+    public record FileTiming(String fileKey, String mimeType, long bytes, Duration duration, boolean failed) {
+    }
+}
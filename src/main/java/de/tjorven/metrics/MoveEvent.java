@@ -0,0 +1,27 @@
+package de.tjorven.metrics;
+
+import jdk.jfr.*;
+
+@Name("de.tjorven.Move")
+@Label("File Move")
+@Category("File Sorter")
+@Description("Move of a single file into its target folder")
+@StackTrace(false)
+public class MoveEvent extends Event {
+
+    @Label("Source")
+    public String source;
+
+    @Label("Target")
+    public String target;
+
+    @Label("MIME Type")
+    public String mimeType;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Outcome")
+    public String outcome;
+}
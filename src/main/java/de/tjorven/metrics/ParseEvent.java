@@ -0,0 +1,27 @@
+package de.tjorven.metrics;
+
+import jdk.jfr.*;
+
+@Name("de.tjorven.Parse")
+@Label("File Parse")
+@Category("File Sorter")
+@Description("Metadata extraction of a single file")
+@StackTrace(false)
+public class ParseEvent extends Event {
+
+    @Label("Path")
+    public String path;
+
+    @Label("MIME Type")
+    public String mimeType;
+
+    @Label("Parser")
+    public String parser;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Outcome")
+    public String outcome;
+}
@@ -1,28 +1,56 @@
 package de.tjorven.page;
 
 import de.tjorven.MetadataListUI;
+import de.tjorven.algorithm.AnalysisListener;
+import de.tjorven.algorithm.AnalysisOptions;
+import de.tjorven.algorithm.AnalysisProgress;
 import de.tjorven.algorithm.FolderAnalyser;
+import de.tjorven.algorithm.MetadataStore;
+import de.tjorven.algorithm.MoveOptions;
+import de.tjorven.algorithm.RecursiveSorter;
+import de.tjorven.algorithm.SortJournal;
+import de.tjorven.algorithm.StorageProfile;
+import de.tjorven.algorithm.WalkOptions;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Paths;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
 public class HomePage extends JPanel {
 
     private String selectedFolderPath;
-    private final Map<String, Map<String, String>> fileMetadataMap = new HashMap<>();
+    private static final long DROPDOWN_REFRESH_MILLIS = 1000;
+    private static final DateTimeFormatter HISTORY_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")
+            .withZone(ZoneId.systemDefault());
+
+    private MetadataStore metadataStore = new MetadataStore();
     private final List<String> metadataDropdown = new ArrayList<>();
 
+    private WalkOptions walkOptions = WalkOptions.defaults();
+    private volatile FolderAnalyser analyser;
+    private volatile long lastDropdownRefresh;
+
     private final JLabel pathLabel;
+    private final JCheckBox recursiveBox;
+    private final JCheckBox duplicatesBox;
+    private final JCheckBox workersBox;
+    private final JTextField typesField;
+    private final JComboBox<StorageProfile> storageBox;
     private final JButton scanBtn;
     private final JButton nextBtn;
+    private final JButton cancelBtn;
+    private final JButton detailsBtn;
     private final JProgressBar progressBar;
+    private final JLabel progressLabel;
 
     public HomePage() {
         this.setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
@@ -40,6 +68,38 @@ public class HomePage extends JPanel {
         this.pathLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
         this.pathLabel.setBorder(new EmptyBorder(10, 0, 20, 0));
 
+        this.recursiveBox = new JCheckBox("Include subfolders");
+        this.recursiveBox.setAlignmentX(Component.CENTER_ALIGNMENT);
+
+        this.duplicatesBox = new JCheckBox("Find duplicate files");
+        this.duplicatesBox.setAlignmentX(Component.CENTER_ALIGNMENT);
+
+        this.workersBox = new JCheckBox("Parse in separate processes (very large folders)");
+        this.workersBox.setToolTipText("A file that crashes a parser is retried on its own instead of ending the scan");
+        this.workersBox.setAlignmentX(Component.CENTER_ALIGNMENT);
+
+        this.typesField = new JTextField(15);
+        JPanel typesPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        typesPanel.add(new JLabel("Only these types (optional, e.g. mp3, flac):"));
+        typesPanel.add(this.typesField);
+        typesPanel.setMaximumSize(new Dimension(Integer.MAX_VALUE, 40));
+        typesPanel.setAlignmentX(Component.CENTER_ALIGNMENT);
+
+        this.storageBox = new JComboBox<>(StorageProfile.values());
+        this.storageBox.setSelectedItem(StorageProfile.SSD);
+        this.storageBox.setRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+                Object label = value instanceof StorageProfile storage ? storage.getDescription() : value;
+                return super.getListCellRendererComponent(list, label, index, isSelected, cellHasFocus);
+            }
+        });
+        JPanel storagePanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        storagePanel.add(new JLabel("Files are on:"));
+        storagePanel.add(this.storageBox);
+        storagePanel.setMaximumSize(new Dimension(Integer.MAX_VALUE, 40));
+        storagePanel.setAlignmentX(Component.CENTER_ALIGNMENT);
+
         this.scanBtn = new JButton("2. Analyze Files");
         this.scanBtn.setEnabled(false);
         this.scanBtn.setAlignmentX(Component.CENTER_ALIGNMENT);
@@ -48,25 +108,56 @@ public class HomePage extends JPanel {
         this.nextBtn.setEnabled(false);
         this.nextBtn.setAlignmentX(Component.CENTER_ALIGNMENT);
 
+        JButton historyBtn = new JButton("Sort History...");
+        historyBtn.setAlignmentX(Component.CENTER_ALIGNMENT);
+
+        this.cancelBtn = new JButton("Cancel Scan");
+        this.cancelBtn.setVisible(false);
+        this.cancelBtn.setAlignmentX(Component.CENTER_ALIGNMENT);
+
+        this.detailsBtn = new JButton("Scan Details...");
+        this.detailsBtn.setVisible(false);
+        this.detailsBtn.setAlignmentX(Component.CENTER_ALIGNMENT);
+
         this.progressBar = new JProgressBar();
         this.progressBar.setIndeterminate(true);
+        this.progressBar.setStringPainted(true);
         this.progressBar.setVisible(false);
         this.progressBar.setMaximumSize(new Dimension(300, 20));
 
+        this.progressLabel = new JLabel(" ");
+        this.progressLabel.setForeground(Color.GRAY);
+        this.progressLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+
         selectBtn.addActionListener(e -> this.selectFolder());
         this.scanBtn.addActionListener(e -> this.startAnalysis());
+        this.cancelBtn.addActionListener(e -> this.cancelAnalysis());
+        this.detailsBtn.addActionListener(e -> this.openScanDetails());
+        historyBtn.addActionListener(e -> this.openHistory());
         this.nextBtn.addActionListener(e -> this.goToSortPage());
 
         this.add(title);
         this.add(Box.createRigidArea(new Dimension(0, 30)));
         this.add(selectBtn);
         this.add(this.pathLabel);
+        this.add(this.recursiveBox);
+        this.add(this.duplicatesBox);
+        this.add(this.workersBox);
+        this.add(typesPanel);
+        this.add(storagePanel);
+        this.add(Box.createRigidArea(new Dimension(0, 10)));
         this.add(Box.createRigidArea(new Dimension(0, 10)));
         this.add(this.scanBtn);
         this.add(Box.createRigidArea(new Dimension(0, 10)));
         this.add(this.progressBar);
+        this.add(this.progressLabel);
+        this.add(Box.createRigidArea(new Dimension(0, 10)));
+        this.add(this.cancelBtn);
+        this.add(this.detailsBtn);
         this.add(Box.createVerticalGlue());
         this.add(this.nextBtn);
+        this.add(Box.createRigidArea(new Dimension(0, 10)));
+        this.add(historyBtn);
     }
 
     private void selectFolder() {
@@ -80,50 +171,217 @@ public class HomePage extends JPanel {
             this.pathLabel.setForeground(new Color(30, 130, 70));
             this.scanBtn.setEnabled(true);
             this.nextBtn.setEnabled(false);
+            // Only network shares can be recognised; a spinning disk has to be picked by hand.
+            if (StorageProfile.detect(selectedFile.toPath()) == StorageProfile.NETWORK) {
+                this.storageBox.setSelectedItem(StorageProfile.NETWORK);
+            }
         }
     }
 
     private void startAnalysis() {
         this.scanBtn.setEnabled(false);
+        this.nextBtn.setEnabled(false);
+        this.cancelBtn.setEnabled(true);
+        this.cancelBtn.setVisible(true);
+        this.detailsBtn.setVisible(false);
+        this.progressBar.setIndeterminate(true);
         this.progressBar.setVisible(true);
+        this.walkOptions = WalkOptions.builder()
+                .recursive(this.recursiveBox.isSelected())
+                .build();
+
+        this.metadataDropdown.clear();
+        this.lastDropdownRefresh = 0;
+
+        AnalysisOptions options = AnalysisOptions.builder()
+                .walkOptions(this.walkOptions)
+                .extensions(this.selectedExtensions())
+                .detectDuplicates(this.duplicatesBox.isSelected())
+                .storage((StorageProfile) this.storageBox.getSelectedItem())
+                .workers(this.workersBox.isSelected() ? AnalysisOptions.defaultWorkers() : 0)
+                .collectMetrics(true)
+                .build();
+        FolderAnalyser folderAnalyser = new FolderAnalyser(Paths.get(this.selectedFolderPath), options);
+        this.analyser = folderAnalyser;
+        this.metadataStore = folderAnalyser.getStore();
 
         new Thread(() -> {
             try {
-                this.loadFiles(this.selectedFolderPath);
+                folderAnalyser.analyse(new AnalysisListener() {
+                    @Override
+                    public void onProgress(AnalysisProgress progress) {
+                        HomePage.this.publishProgress(folderAnalyser, progress);
+                    }
+                });
 
                 SwingUtilities.invokeLater(() -> {
-                    this.progressBar.setVisible(false);
-                    this.nextBtn.setEnabled(true);
+                    this.finishAnalysis(folderAnalyser);
                     this.scanBtn.setText("Re-scan Files");
-                    this.scanBtn.setEnabled(true);
                 });
             } catch (Exception e) {
                 SwingUtilities.invokeLater(() -> {
-                    this.progressBar.setVisible(false);
-                    this.scanBtn.setEnabled(true);
+                    this.finishAnalysis(folderAnalyser);
                     JOptionPane.showMessageDialog(this, "Error: " + e.getMessage());
                 });
             }
-        }).start();
+        }, "folder-analysis").start();
     }
 
-    private void loadFiles(String path) throws Exception {
-        this.metadataDropdown.clear();
-        this.fileMetadataMap.clear();
+    private List<String> selectedExtensions() {
+        String text = this.typesField.getText().toLowerCase().trim();
+        if (text.isEmpty()) {
+            return List.of();
+        }
+        return Arrays.stream(text.split("[, ]+"))
+                .map(ext -> ext.startsWith(".") ? ext : "." + ext)
+                .toList();
+    }
+
+    private void cancelAnalysis() {
+        FolderAnalyser current = this.analyser;
+        if (current != null) {
+            this.cancelBtn.setEnabled(false);
+            current.cancel();
+        }
+    }
+
+    private void publishProgress(FolderAnalyser folderAnalyser, AnalysisProgress progress) {
+        List<String> attributes = null;
+        long now = System.currentTimeMillis();
+        if (progress.finished() || now - this.lastDropdownRefresh >= DROPDOWN_REFRESH_MILLIS) {
+            this.lastDropdownRefresh = now;
+            attributes = folderAnalyser.findSimilarities().stream().map(Map.Entry::getKey).toList();
+        }
+
+        List<String> refreshedAttributes = attributes;
+        SwingUtilities.invokeLater(() -> {
+            if (this.analyser != folderAnalyser) {
+                return;
+            }
+
+            if (refreshedAttributes != null) {
+                this.metadataDropdown.clear();
+                this.metadataDropdown.addAll(refreshedAttributes);
+            }
+
+            this.progressBar.setIndeterminate(progress.filesDiscovered() == 0);
+            this.progressBar.setMaximum((int) Math.min(Integer.MAX_VALUE, progress.filesDiscovered()));
+            this.progressBar.setValue((int) Math.min(Integer.MAX_VALUE, progress.filesDone()));
+            this.progressBar.setString(progress.filesDone() + " / " + progress.filesDiscovered() + " files");
+            this.progressLabel.setText(this.describe(progress));
+            this.nextBtn.setEnabled(!this.metadataStore.isEmpty());
+        });
+    }
+
+    private String describe(AnalysisProgress progress) {
+        String text = String.format("%.1f files/s · %.1f MB/s", progress.filesPerSecond(), progress.bytesPerSecond() / (1024 * 1024));
+        if (progress.finished()) {
+            if (progress.firstFileAfter() != null) {
+                text += String.format(" · first file after %d ms", progress.firstFileAfter().toMillis());
+            }
+            return text;
+        }
 
-        FolderAnalyser analyser = new FolderAnalyser(Paths.get(path));
+        long etaSeconds = progress.eta().toSeconds();
+        text += String.format(" · ETA %d:%02d", etaSeconds / 60, etaSeconds % 60);
+        if (progress.currentFile() != null) {
+            text += " · " + progress.currentFile();
+        }
+        return text;
+    }
+
+    private void finishAnalysis(FolderAnalyser folderAnalyser) {
+        if (this.analyser != folderAnalyser) {
+            return;
+        }
 
-        analyser.findSimilarities().forEach(entry -> this.metadataDropdown.add(entry.getKey()));
+        this.progressBar.setVisible(false);
+        this.cancelBtn.setVisible(false);
+        this.detailsBtn.setVisible(true);
+        this.scanBtn.setEnabled(true);
+        this.nextBtn.setEnabled(!this.metadataStore.isEmpty());
+        if (folderAnalyser.isCancelled()) {
+            this.progressLabel.setText("Scan cancelled after " + this.metadataStore.size() + " files");
+        } else if (!folderAnalyser.getSkippedFiles().isEmpty()) {
+            this.progressLabel.setText(this.progressLabel.getText() + " · " + folderAnalyser.getSkippedFiles().size()
+                    + " files skipped, see Scan Details");
+        }
+    }
 
-        this.fileMetadataMap.putAll(analyser.getMetadata());
+    private void openScanDetails() {
+        FolderAnalyser current = this.analyser;
+        if (current == null) {
+            return;
+        }
+
+        StringBuilder text = new StringBuilder(current.getMetrics().snapshot().format());
+        if (!current.getSkippedFiles().isEmpty()) {
+            text.append("\nSkipped files\n");
+            current.getSkippedFiles().entrySet().stream()
+                    .sorted(Map.Entry.comparingByKey())
+                    .forEach(skipped -> text.append(String.format("  %-30s %s%n", skipped.getValue().getDescription(), skipped.getKey())));
+        }
+
+        JTextArea report = new JTextArea(text.toString(), 25, 110);
+        report.setEditable(false);
+        report.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        JOptionPane.showMessageDialog(this, new JScrollPane(report), "Scan Details", JOptionPane.PLAIN_MESSAGE);
+    }
+
+    private void openHistory() {
+        List<SortJournal.Replay> journals = SortJournal.list();
+        if (journals.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "No sort operations recorded yet.");
+            return;
+        }
+
+        JList<SortJournal.Replay> list = new JList<>(journals.toArray(new SortJournal.Replay[0]));
+        list.setSelectedIndex(0);
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> jList, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+                SortJournal.Replay replay = (SortJournal.Replay) value;
+                String text = String.format("%s  %s  %d files  [%s]", HISTORY_DATE_FORMAT.format(replay.createdAt()),
+                        replay.rootPath(), replay.moves().size(), replay.status());
+                return super.getListCellRendererComponent(jList, text, index, isSelected, cellHasFocus);
+            }
+        });
+
+        String[] actions = {"Revert", "Resume", "Close"};
+        int choice = JOptionPane.showOptionDialog(this, new JScrollPane(list), "Sort History",
+                JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE, null, actions, actions[2]);
+        SortJournal.Replay selected = list.getSelectedValue();
+        if (selected == null || choice < 0 || choice > 1) {
+            return;
+        }
+        if (selected.reverted() || (choice == 1 && selected.complete())) {
+            JOptionPane.showMessageDialog(this, "This operation is already " + selected.status() + ".");
+            return;
+        }
+
+        new Thread(() -> {
+            try {
+                RecursiveSorter sorter = new RecursiveSorter(selected.rootPath().toString(), this.metadataStore);
+                if (choice == 0) {
+                    sorter.revert(selected);
+                } else {
+                    sorter.resume(selected);
+                }
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, actions[choice] + " complete!"));
+            } catch (IOException e) {
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, "Error: " + e.getMessage()));
+            }
+        }, "sort-history").start();
     }
 
     private void goToSortPage() {
         SortOptionsPage sortOptionsPage = new SortOptionsPage(
                 this.selectedFolderPath,
-                this.fileMetadataMap,
-                this.metadataDropdown
+                this.metadataStore,
+                new ArrayList<>(this.metadataDropdown)
         );
+        sortOptionsPage.getExtensionFilterField().setText(this.typesField.getText().trim());
+        sortOptionsPage.getRecursiveSorter().setMoveOptions(MoveOptions.forStorage((StorageProfile) this.storageBox.getSelectedItem()));
         MetadataListUI.getInstance().open(sortOptionsPage);
     }
 }
\ No newline at end of file
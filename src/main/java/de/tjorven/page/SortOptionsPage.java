@@ -1,47 +1,80 @@
 package de.tjorven.page;
 
+import de.tjorven.algorithm.ConflictPolicy;
+import de.tjorven.algorithm.DuplicatePolicy;
+import de.tjorven.algorithm.MetadataStore;
+import de.tjorven.algorithm.MoveOptions;
+import de.tjorven.algorithm.MoveStats;
 import de.tjorven.algorithm.RecursiveSorter;
+import de.tjorven.algorithm.SortPlan;
+import de.tjorven.preview.PreviewTreeModel;
 import lombok.Getter;
 
 import javax.swing.*;
-import javax.swing.tree.DefaultMutableTreeNode;
-import javax.swing.tree.DefaultTreeModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.awt.datatransfer.DataFlavor;
 import java.awt.datatransfer.StringSelection;
 import java.awt.datatransfer.Transferable;
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.Future;
 
 @Getter
 public class SortOptionsPage extends JPanel {
 
-    private final ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newCachedThreadPool();
-
-    private final DefaultMutableTreeNode rootNode = new DefaultMutableTreeNode("Preview Root");
-    private final DefaultTreeModel treeModel = new DefaultTreeModel(this.rootNode);
-    private final JTree previewTree = new JTree(this.treeModel);
+    private static final int PROGRESS_STEP = 100;
+    private static final int PREVIEW_DEBOUNCE_MILLIS = 200;
+    private static final int CANCELLATION_CHECK_MASK = 0xFFF;
+
+    // Sorts and reverts never overlap, and the move executor does its own parallel work.
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sort-runner");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService previewExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "preview-builder");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Timer previewDebounce = new Timer(PREVIEW_DEBOUNCE_MILLIS, e -> this.computePreview());
+    private Future<?> previewTask;
+    private long previewGeneration;
+
+    private final JTree previewTree = new JTree(PreviewTreeModel.empty("Preview Root"));
+    private final JLabel conflictLabel = new JLabel(" ");
 
     private final DefaultListModel<String> selectedLevelsModel = new DefaultListModel<>();
     private final JList<String> levelsList = new JList<>(this.selectedLevelsModel);
 
     private final JTextField extensionFilterField = new JTextField(10);
+    private final JComboBox<ConflictPolicy> conflictPolicyBox = new JComboBox<>(ConflictPolicy.values());
+    private final JComboBox<DuplicatePolicy> duplicatePolicyBox = new JComboBox<>(DuplicatePolicy.values());
+    private final JLabel targetLabel = new JLabel();
+    private final JCheckBox verifyBox = new JCheckBox("Verify copies to other drives");
     private final JButton revertButton = new JButton("Revert Last Sort");
+    private final JButton runButton = new JButton("Run Recursive Sort");
+    private final JProgressBar operationProgress = new JProgressBar();
 
     private final String selectedFolderPath;
-    private final Map<String, Map<String, String>> fileMetadataMap;
+    private final MetadataStore metadataStore;
     private final RecursiveSorter recursiveSorter;
     private final List<String> metadataOptions;
+    private Path targetFolder;
 
-    public SortOptionsPage(String selectedFolderPath, Map<String, Map<String, String>> fileMetadataMap, List<String> metadataOptions) {
+    public SortOptionsPage(String selectedFolderPath, MetadataStore metadataStore, List<String> metadataOptions) {
         this.selectedFolderPath = selectedFolderPath;
-        this.fileMetadataMap = fileMetadataMap;
-        this.recursiveSorter = new RecursiveSorter(this.selectedFolderPath, this.fileMetadataMap);
+        this.metadataStore = metadataStore;
+        this.recursiveSorter = new RecursiveSorter(this.selectedFolderPath, this.metadataStore);
         this.metadataOptions = metadataOptions;
 
         this.init();
@@ -49,19 +82,24 @@ public class SortOptionsPage extends JPanel {
 
     private void init() {
         this.setLayout(new BorderLayout());
+        this.previewDebounce.setRepeats(false);
 
         JPanel leftPanel = new JPanel(new BorderLayout(10, 10));
         leftPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 5));
 
         JPanel topControls = new JPanel(new BorderLayout(5, 5));
         topControls.add(this.createFilterPanel(), BorderLayout.NORTH);
+        topControls.add(this.createTargetPanel(), BorderLayout.SOUTH);
         topControls.add(this.createHierarchyBuilder(this.metadataOptions), BorderLayout.CENTER);
         leftPanel.add(topControls, BorderLayout.CENTER);
 
         JPanel previewPanel = new JPanel(new BorderLayout());
         previewPanel.setBorder(BorderFactory.createTitledBorder("Move Preview"));
         this.previewTree.setFont(new Font("SansSerif", Font.PLAIN, 12));
+        this.previewTree.setRowHeight(this.previewTree.getFontMetrics(this.previewTree.getFont()).getHeight() + 4);
+        this.previewTree.setLargeModel(true);
         previewPanel.add(new JScrollPane(this.previewTree), BorderLayout.CENTER);
+        previewPanel.add(this.conflictLabel, BorderLayout.SOUTH);
         previewPanel.setMinimumSize(new Dimension(200, 100));
 
         JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, leftPanel, previewPanel);
@@ -73,12 +111,24 @@ public class SortOptionsPage extends JPanel {
         this.revertButton.setEnabled(false);
         this.revertButton.addActionListener(e -> this.handleRevert());
 
-        JButton runButton = new JButton("Run Recursive Sort");
-        runButton.setFont(new Font("SansSerif", Font.BOLD, 14));
-        runButton.addActionListener(e -> this.startSorting());
+        this.runButton.setFont(new Font("SansSerif", Font.BOLD, 14));
+        this.runButton.addActionListener(e -> this.startSorting());
+
+        this.operationProgress.setStringPainted(true);
+        this.operationProgress.setVisible(false);
+        this.recursiveSorter.setProgressListener((completed, total) -> {
+            if (completed % PROGRESS_STEP == 0 || completed == total) {
+                SwingUtilities.invokeLater(() -> {
+                    this.operationProgress.setMaximum(total);
+                    this.operationProgress.setValue(completed);
+                    this.operationProgress.setString(completed + " / " + total);
+                });
+            }
+        });
 
+        actionPanel.add(this.operationProgress);
         actionPanel.add(this.revertButton);
-        actionPanel.add(runButton);
+        actionPanel.add(this.runButton);
 
         this.add(splitPane, BorderLayout.CENTER);
         this.add(actionPanel, BorderLayout.SOUTH);
@@ -93,56 +143,133 @@ public class SortOptionsPage extends JPanel {
     }
 
     private void updatePreview() {
-        this.rootNode.removeAllChildren();
-        this.rootNode.setUserObject(this.selectedFolderPath != null ? this.selectedFolderPath : "Preview");
+        this.previewDebounce.restart();
+    }
+
+    private void computePreview() {
+        String rootName = this.selectedFolderPath != null ? this.selectedFolderPath : "Preview";
+        long generation = ++this.previewGeneration;
+        if (this.previewTask != null) {
+            this.previewTask.cancel(true);
+        }
 
-        if (this.fileMetadataMap == null || this.selectedLevelsModel.isEmpty()) {
-            this.treeModel.reload();
+        if (this.metadataStore == null || this.selectedLevelsModel.isEmpty()) {
+            this.previewTask = null;
+            if (this.previewTree.getModel() instanceof PreviewTreeModel previous) {
+                previous.dispose();
+            }
+            this.previewTree.setModel(PreviewTreeModel.empty(rootName));
+            this.conflictLabel.setText(" ");
             return;
         }
 
-        String filterText = this.extensionFilterField.getText().toLowerCase().trim();
-        String[] allowedExtensions = filterText.isEmpty() ? new String[0] : filterText.split("[, ]+");
-
-        this.fileMetadataMap.forEach((fileName, metadata) -> {
-            if (allowedExtensions.length > 0) {
-                boolean matches = false;
-                for (String ext : allowedExtensions) {
-                    if (fileName.toLowerCase().endsWith(ext.startsWith(".") ? ext : "." + ext)) {
-                        matches = true;
-                        break;
-                    }
-                }
-                if (!matches) {
-                    return;
-                }
+        String[] allowedExtensions = this.allowedExtensions();
+        List<String> levels = Collections.list(this.selectedLevelsModel.elements());
+        ConflictPolicy policy = (ConflictPolicy) this.conflictPolicyBox.getSelectedItem();
+        DuplicatePolicy duplicatePolicy = (DuplicatePolicy) this.duplicatePolicyBox.getSelectedItem();
+
+        // Only the filter, the duplicate check and the top level run here. Deeper folders are grouped, and their target
+        // directories listed for name conflicts, on this same thread as they are expanded. The full plan is compiled
+        // when the sort runs.
+        this.previewTask = this.previewExecutor.submit(() -> {
+            int[] files = this.selectFiles(allowedExtensions);
+            if (files == null) {
+                return;
+            }
+            Path rootPath = Paths.get(this.selectedFolderPath);
+            PreviewTreeModel.Scope scope = new PreviewTreeModel.Scope(rootPath, this.targetRoot(rootPath), this.metadataStore, policy);
+            int[] copies = SortPlan.findCopies(rootPath, scope.targetRoot(), this.metadataStore, levels, files, duplicatePolicy);
+            if (Thread.currentThread().isInterrupted()) {
+                return;
             }
 
-            DefaultMutableTreeNode currentNode = this.rootNode;
-            for (int i = 0; i < this.selectedLevelsModel.size(); i++) {
-                String attr = this.selectedLevelsModel.get(i);
-                String folderName = metadata.getOrDefault(attr, "Unknown").replaceAll("[\\\\/:*?\"<>|]", "_");
-                currentNode = this.getOrCreateChild(currentNode, folderName);
+            boolean routeCopies = duplicatePolicy == DuplicatePolicy.SKIP || duplicatePolicy == DuplicatePolicy.FOLDER;
+            int[] sorted = routeCopies ? without(files, copies) : files;
+            int[] setAside = duplicatePolicy == DuplicatePolicy.FOLDER ? copies : new int[0];
+            PreviewTreeModel model = new PreviewTreeModel(rootName, this.previewExecutor, scope, levels, sorted, setAside);
+            model.preload();
+            if (Thread.currentThread().isInterrupted()) {
+                return;
             }
-            currentNode.add(new DefaultMutableTreeNode(fileName));
+            String summary = describeSelection(sorted.length + setAside.length, copies.length);
+            SwingUtilities.invokeLater(() -> {
+                if (generation == this.previewGeneration) {
+                    if (this.previewTree.getModel() instanceof PreviewTreeModel previous) {
+                        previous.dispose();
+                    }
+                    this.previewTree.setModel(model);
+                    this.previewTree.expandRow(0);
+                    this.conflictLabel.setText(summary);
+                }
+            });
         });
+    }
+
+    private int[] selectFiles(String[] allowedExtensions) {
+        return allowedExtensions.length > 0 ? this.filterByExtension(allowedExtensions) : this.metadataStore.allFiles();
+    }
+
+    private Path targetRoot(Path rootPath) {
+        return this.targetFolder != null ? this.targetFolder : rootPath;
+    }
+
+    private SortPlan compilePlan(String[] allowedExtensions, List<String> levels, ConflictPolicy policy, DuplicatePolicy duplicatePolicy) {
+        Path rootPath = Paths.get(this.selectedFolderPath);
+        return SortPlan.compile(rootPath, this.targetRoot(rootPath), this.metadataStore, levels, this.selectFiles(allowedExtensions),
+                policy, duplicatePolicy);
+    }
+
+    private String[] allowedExtensions() {
+        String filterText = this.extensionFilterField.getText().toLowerCase().trim();
+        return filterText.isEmpty() ? new String[0] : filterText.split("[, ]+");
+    }
+
+    private static String describeSelection(int fileCount, int copyCount) {
+        String duplicates = copyCount == 0 ? "" : String.format(" · %d duplicates", copyCount);
+        return fileCount + " files selected" + duplicates + " · name conflicts show on each folder once its parent is open";
+    }
+
+    private static String describeConflicts(SortPlan plan) {
+        if (plan.getConflicts().isEmpty()) {
+            return "";
+        }
+        String resolution = switch (plan.getConflictPolicy()) {
+            case RENAME -> "numbered copies were kept";
+            case SKIP -> "those files stayed where they were";
+            case OVERWRITE -> "existing files were overwritten";
+        };
+        return String.format("%n%d name conflicts, %s.", plan.getConflicts().size(), resolution);
+    }
 
-        this.treeModel.reload();
-        for (int i = 0; i < this.previewTree.getRowCount(); i++) {
-            this.previewTree.expandRow(i);
+    private static int[] without(int[] files, int[] excluded) {
+        if (excluded.length == 0) {
+            return files;
         }
+        return Arrays.stream(files).filter(fileId -> Arrays.binarySearch(excluded, fileId) < 0).toArray();
     }
 
-    private DefaultMutableTreeNode getOrCreateChild(DefaultMutableTreeNode parent, String name) {
-        for (int i = 0; i < parent.getChildCount(); i++) {
-            DefaultMutableTreeNode child = (DefaultMutableTreeNode) parent.getChildAt(i);
-            if (child.getUserObject().equals(name)) {
-                return child;
+    private int[] filterByExtension(String[] allowedExtensions) {
+        int fileCount = this.metadataStore.size();
+        int[] matching = new int[fileCount];
+        int count = 0;
+        for (int fileId = 0; fileId < fileCount; fileId++) {
+            if ((fileId & CANCELLATION_CHECK_MASK) == 0 && Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+
+            String fileKey = this.metadataStore.fileKey(fileId);
+            if (fileKey == null) {
+                continue;
+            }
+            String fileName = fileKey.toLowerCase();
+            for (String ext : allowedExtensions) {
+                if (fileName.endsWith(ext.startsWith(".") ? ext : "." + ext)) {
+                    matching[count++] = fileId;
+                    break;
+                }
             }
         }
-        DefaultMutableTreeNode newNode = new DefaultMutableTreeNode(name);
-        parent.add(newNode);
-        return newNode;
+        return Arrays.copyOf(matching, count);
     }
 
     private JPanel createHierarchyBuilder(List<String> options) {
@@ -150,6 +277,16 @@ public class SortOptionsPage extends JPanel {
         panel.setBorder(BorderFactory.createTitledBorder("Sorting Hierarchy"));
 
         JComboBox<String> combo = new JComboBox<>(options.toArray(new String[0]));
+        combo.setRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+                Object label = value;
+                if (value instanceof String attribute && SortOptionsPage.this.metadataStore != null) {
+                    label = attribute + " (" + SortOptionsPage.this.metadataStore.cardinality(attribute) + " distinct values)";
+                }
+                return super.getListCellRendererComponent(list, label, index, isSelected, cellHasFocus);
+            }
+        });
         JButton addButton = new JButton("Add");
         JButton removeButton = new JButton("Remove");
         JButton clearButton = new JButton("Clear");
@@ -191,38 +328,150 @@ public class SortOptionsPage extends JPanel {
         panel.setBorder(BorderFactory.createTitledBorder("Filter"));
         panel.add(new JLabel("Types (e.g. mp3, flac):"));
         panel.add(this.extensionFilterField);
+        panel.add(new JLabel("If a name is taken:"));
+        panel.add(this.conflictPolicyBox);
+
+        this.conflictPolicyBox.setRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+                Object label = value instanceof ConflictPolicy policy ? policy.getDescription() : value;
+                return super.getListCellRendererComponent(list, label, index, isSelected, cellHasFocus);
+            }
+        });
+        this.conflictPolicyBox.addActionListener(e -> this.updatePreview());
+
+        // Only offered if the scan looked for duplicates and found some.
+        if (this.metadataStore != null && !this.metadataStore.duplicateGroups().isEmpty()) {
+            panel.add(new JLabel("Duplicates:"));
+            panel.add(this.duplicatePolicyBox);
+        }
+        this.duplicatePolicyBox.setRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+                Object label = value instanceof DuplicatePolicy policy ? policy.getDescription() : value;
+                return super.getListCellRendererComponent(list, label, index, isSelected, cellHasFocus);
+            }
+        });
+        this.duplicatePolicyBox.addActionListener(e -> this.updatePreview());
 
         this.extensionFilterField.addActionListener(e -> this.updatePreview());
+        this.extensionFilterField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                SortOptionsPage.this.updatePreview();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                SortOptionsPage.this.updatePreview();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                SortOptionsPage.this.updatePreview();
+            }
+        });
+        return panel;
+    }
+
+    private JPanel createTargetPanel() {
+        JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        panel.setBorder(BorderFactory.createTitledBorder("Destination"));
+        JButton chooseButton = new JButton("Choose...");
+        JButton resetButton = new JButton("Sort in place");
+        panel.add(this.targetLabel);
+        panel.add(chooseButton);
+        panel.add(resetButton);
+        panel.add(this.verifyBox);
+        this.updateTargetLabel();
+
+        chooseButton.addActionListener(e -> {
+            JFileChooser chooser = new JFileChooser();
+            chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+            if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+                File selectedFile = chooser.getSelectedFile();
+                this.setTargetFolder(selectedFile.toPath().toAbsolutePath().normalize());
+            }
+        });
+        resetButton.addActionListener(e -> this.setTargetFolder(null));
         return panel;
     }
 
+    private void setTargetFolder(Path targetFolder) {
+        this.targetFolder = targetFolder;
+        this.recursiveSorter.setTargetRoot(targetFolder);
+        this.updateTargetLabel();
+        this.updatePreview();
+    }
+
+    private void updateTargetLabel() {
+        this.targetLabel.setText(this.targetFolder != null ? this.targetFolder.toString() : "Inside " + this.selectedFolderPath);
+    }
+
     private void startSorting() {
         List<String> attributes = Collections.list(this.selectedLevelsModel.elements());
-        String filter = this.extensionFilterField.getText();
-
+        String[] allowedExtensions = this.allowedExtensions();
+        ConflictPolicy policy = (ConflictPolicy) this.conflictPolicyBox.getSelectedItem();
+        DuplicatePolicy duplicatePolicy = (DuplicatePolicy) this.duplicatePolicyBox.getSelectedItem();
+        MoveOptions moveOptions = this.recursiveSorter.getMoveOptions().toBuilder()
+                .verifyTransfers(this.verifyBox.isSelected())
+                .build();
+        this.recursiveSorter.setMoveOptions(moveOptions);
+
+        this.beginOperation();
         this.executor.execute(() -> {
             try {
-                this.recursiveSorter.runFilter(Paths.get(this.selectedFolderPath), attributes, List.of(filter));
+                SortPlan plan = this.compilePlan(allowedExtensions, attributes, policy, duplicatePolicy);
+                MoveStats stats = this.recursiveSorter.execute(plan);
                 SwingUtilities.invokeLater(() -> {
-                    this.revertButton.setEnabled(true);
-                    JOptionPane.showMessageDialog(this, "Sorting complete!");
+                    this.endOperation();
+                    JOptionPane.showMessageDialog(this, String.format("Sorting complete! Moved %d files in %.1f s (%.0f files/s)%s",
+                            stats.moved(), stats.elapsed().toMillis() / 1000.0, stats.filesPerSecond(), describeConflicts(plan)));
                     this.updatePreview();
                 });
             } catch (IOException ex) {
-                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, "Error: " + ex.getMessage()));
+                SwingUtilities.invokeLater(() -> {
+                    this.endOperation();
+                    JOptionPane.showMessageDialog(this, "Error: " + ex.getMessage());
+                });
             }
         });
     }
 
     private void handleRevert() {
-        try {
-            this.recursiveSorter.revertSort();
-            this.revertButton.setEnabled(false);
-            this.updatePreview();
-            JOptionPane.showMessageDialog(this, "Revert complete!");
-        } catch (IOException ex) {
-            JOptionPane.showMessageDialog(this, "Error: " + ex.getMessage());
-        }
+        this.beginOperation();
+        this.executor.execute(() -> {
+            try {
+                MoveStats stats = this.recursiveSorter.revertSort();
+                SwingUtilities.invokeLater(() -> {
+                    this.endOperation();
+                    this.updatePreview();
+                    JOptionPane.showMessageDialog(this, String.format("Revert complete! Restored %d files in %.1f s",
+                            stats.moved(), stats.elapsed().toMillis() / 1000.0));
+                });
+            } catch (IOException ex) {
+                SwingUtilities.invokeLater(() -> {
+                    this.endOperation();
+                    JOptionPane.showMessageDialog(this, "Error: " + ex.getMessage());
+                });
+            }
+        });
+    }
+
+    private void beginOperation() {
+        this.runButton.setEnabled(false);
+        this.revertButton.setEnabled(false);
+        this.operationProgress.setValue(0);
+        this.operationProgress.setString("");
+        this.operationProgress.setVisible(true);
+        this.revalidate();
+    }
+
+    private void endOperation() {
+        this.runButton.setEnabled(true);
+        this.revertButton.setEnabled(!this.recursiveSorter.getLastOperationHistory().isEmpty());
+        this.operationProgress.setVisible(false);
+        this.revalidate();
     }
 
     private class SortTransferHandler extends TransferHandler {
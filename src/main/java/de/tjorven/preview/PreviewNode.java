@@ -0,0 +1,163 @@
+package de.tjorven.preview;
+
+import de.tjorven.algorithm.MetadataStore;
+import de.tjorven.algorithm.RecursiveSorter;
+import de.tjorven.algorithm.SortPlan;
+import lombok.Getter;
+
+import java.nio.file.Path;
+import java.util.*;
+
+@Getter
+public class PreviewNode {
+
+    private final PreviewNode parent;
+    private final String name;
+    private final int level;
+    private final int[] files;
+    private final Path directory;
+    private final List<String> folders;
+
+    private List<PreviewNode> children;
+    private Map<String, Integer> childIndex;
+    private SortPlan placement;
+    private boolean loading;
+
+    PreviewNode(PreviewNode parent, String name, int level, int[] files, Path directory, List<String> folders) {
+        this.parent = parent;
+        this.name = name;
+        this.level = level;
+        this.files = files;
+        this.directory = directory;
+        this.folders = folders;
+    }
+
+    public int getFileCount() {
+        return this.files.length;
+    }
+
+    boolean hasFileChildren(List<String> levels) {
+        return this.level == levels.size();
+    }
+
+    // Empty until the node has been loaded; the model loads it off the EDT on first use.
+    List<PreviewNode> children() {
+        return this.children == null ? List.of() : this.children;
+    }
+
+    // The moves into this folder, with name conflicts resolved against what is on disk. Empty until loaded.
+    List<RecursiveSorter.MoveHistory> moves() {
+        return this.placement == null ? List.of() : this.placement.moves();
+    }
+
+    int indexOf(String childName) {
+        return this.childIndex == null ? -1 : this.childIndex.getOrDefault(childName, -1);
+    }
+
+    // Called on the EDT. Returns true exactly once for a node that still has to be loaded.
+    boolean startLoading(List<String> levels) {
+        boolean loaded = this.hasFileChildren(levels) ? this.placement != null : this.children != null;
+        if (loaded || this.loading) {
+            return false;
+        }
+        this.loading = true;
+        return true;
+    }
+
+    // Runs on the preview thread and reads only what the node was built with. Folders that hold files directly are
+    // placed along with their parent, so their name conflicts show before they are expanded.
+    Loaded load(PreviewTreeModel.Scope scope, List<String> levels) {
+        if (this.hasFileChildren(levels)) {
+            return new Loaded(List.of(), Map.of(), this.place(scope));
+        }
+
+        List<PreviewNode> nodes = this.group(scope.store(), levels);
+        Map<String, Integer> index = new HashMap<>(nodes.size() * 2);
+        for (PreviewNode node : nodes) {
+            index.put(node.name, index.size());
+            if (node.hasFileChildren(levels)) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                // Not yet visible to the EDT, so it is safe to fill in here.
+                node.placement = node.place(scope);
+            }
+        }
+        return new Loaded(nodes, index, null);
+    }
+
+    // Called on the EDT with what load returned.
+    void install(Loaded loaded) {
+        this.children = loaded.children();
+        this.childIndex = loaded.childIndex();
+        if (loaded.placement() != null) {
+            this.placement = loaded.placement();
+        }
+        this.loading = false;
+    }
+
+    private SortPlan place(PreviewTreeModel.Scope scope) {
+        return SortPlan.compileDirectory(scope.rootPath(), this.directory, this.folders, scope.store(), this.files, scope.policy());
+    }
+
+    private List<PreviewNode> group(MetadataStore store, List<String> levels) {
+        String attribute = levels.get(this.level);
+        int[] candidates = this.level == 0 && this.files.length == store.size() ? null : this.files;
+        Map<String, int[]> groups = store.groupBy(attribute, candidates);
+
+        Map<String, int[]> byFolder = new HashMap<>(groups.size() * 2);
+        groups.forEach((value, groupFiles) ->
+                byFolder.merge(SortPlan.folderName(attribute, value), groupFiles, PreviewNode::mergeSorted));
+
+        List<String> names = new ArrayList<>(byFolder.keySet());
+        names.sort(String.CASE_INSENSITIVE_ORDER);
+
+        List<PreviewNode> nodes = new ArrayList<>(names.size());
+        for (String folderName : names) {
+            List<String> childFolders = new ArrayList<>(this.folders.size() + 1);
+            childFolders.addAll(this.folders);
+            childFolders.add(folderName);
+            nodes.add(new PreviewNode(this, folderName, this.level + 1, byFolder.get(folderName), this.directory.resolve(folderName),
+                    List.copyOf(childFolders)));
+        }
+        return nodes;
+    }
+
+    private static int[] mergeSorted(int[] left, int[] right) {
+        int[] merged = new int[left.length + right.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < left.length && j < right.length) {
+            merged[k++] = left[i] <= right[j] ? left[i++] : right[j++];
+        }
+        while (i < left.length) {
+            merged[k++] = left[i++];
+        }
+        while (j < right.length) {
+            merged[k++] = right[j++];
+        }
+        return merged;
+    }
+
+    @Override
+    public String toString() {
+        if (this.placement == null || this.placement.getConflicts().isEmpty()) {
+            return this.name + " (" + this.files.length + ")";
+        }
+        return this.name + " (" + this.files.length + ", " + this.placement.getConflicts().size() + " name conflicts)";
+    }
+
+    record Loaded(List<PreviewNode> children, Map<String, Integer> childIndex, SortPlan placement) {
+    }
+
+    public record FileLeaf(PreviewNode parent, int index, RecursiveSorter.MoveHistory move) {
+
+        @Override
+        public String toString() {
+            String target = this.move.target().getFileName().toString();
+            String source = this.move.source().getFileName().toString();
+            return target.equals(source) ? target : target + "  (renamed from " + source + ")";
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package de.tjorven.preview;
+
+import de.tjorven.algorithm.ConflictPolicy;
+import de.tjorven.algorithm.MetadataStore;
+import de.tjorven.algorithm.SortPlan;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.*;
+import javax.swing.event.EventListenerList;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.TreeModel;
+import javax.swing.tree.TreePath;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+// Folders are grouped through the store's index only when expanded. The grouping, and the directory listing that finds
+// name conflicts, run on the loader; the EDT only ever sees finished nodes. The complete plan is compiled when the sort runs.
+public class PreviewTreeModel implements TreeModel {
+
+    private static final Logger logger = LoggerFactory.getLogger(PreviewTreeModel.class);
+
+    private final EventListenerList listeners = new EventListenerList();
+
+    private final Executor loader;
+    private final Executor publisher;
+    private final Scope scope;
+    private final List<String> levels;
+    private final PreviewNode root;
+    private final PreviewNode duplicates;
+
+    private volatile boolean disposed;
+
+    // setAside are copies that the duplicate policy moves into their own folder instead of sorting them.
+    public PreviewTreeModel(String rootName, Executor loader, Scope scope, List<String> levels, int[] files, int[] setAside) {
+        this(rootName, loader, SwingUtilities::invokeLater, scope, levels, files, setAside);
+    }
+
+    private PreviewTreeModel(String rootName, Executor loader, Executor publisher, Scope scope, List<String> levels, int[] files,
+                             int[] setAside) {
+        this.loader = loader;
+        this.publisher = publisher;
+        this.scope = scope;
+        this.levels = List.copyOf(levels);
+        this.root = new PreviewNode(null, rootName, 0, files, scope.targetRoot(), List.of());
+        this.duplicates = setAside.length == 0 ? null : new PreviewNode(this.root, SortPlan.DUPLICATES_FOLDER, this.levels.size(),
+                setAside, scope.targetRoot().resolve(SortPlan.DUPLICATES_FOLDER), List.of(SortPlan.DUPLICATES_FOLDER));
+    }
+
+    public static PreviewTreeModel empty(String rootName) {
+        Path rootPath = Paths.get(rootName);
+        return direct(rootName, new Scope(rootPath, rootPath, new MetadataStore(), ConflictPolicy.RENAME), List.of(), new int[0]);
+    }
+
+    // Loads folders on the thread that asks for them. Only for callers without a visible tree, such as the benchmarks.
+    public static PreviewTreeModel direct(String rootName, Scope scope, List<String> levels, int[] files) {
+        return new PreviewTreeModel(rootName, Runnable::run, Runnable::run, scope, levels, files, new int[0]);
+    }
+
+    // Loads the top level on the calling thread, so the model is published with its first folders already in place.
+    public void preload() {
+        if (this.levels.isEmpty()) {
+            return;
+        }
+        if (this.root.startLoading(this.levels)) {
+            this.root.install(this.root.load(this.scope, this.levels));
+        }
+        if (this.duplicates != null && this.duplicates.startLoading(this.levels)) {
+            this.duplicates.install(this.duplicates.load(this.scope, this.levels));
+        }
+    }
+
+    // Stops loads that are still queued for a model the tree no longer shows.
+    public void dispose() {
+        this.disposed = true;
+    }
+
+    @Override
+    public Object getRoot() {
+        return this.root;
+    }
+
+    @Override
+    public Object getChild(Object parent, int index) {
+        if (!(parent instanceof PreviewNode node)) {
+            return null;
+        }
+
+        if (node.hasFileChildren(this.levels)) {
+            return new PreviewNode.FileLeaf(node, index, node.moves().get(index));
+        }
+        List<PreviewNode> children = node.children();
+        return index == children.size() && node == this.root ? this.duplicates : children.get(index);
+    }
+
+    @Override
+    public int getChildCount(Object parent) {
+        if (!(parent instanceof PreviewNode node) || this.levels.isEmpty()) {
+            return 0;
+        }
+
+        this.load(node);
+        if (node.hasFileChildren(this.levels)) {
+            return node.moves().size();
+        }
+        int folders = node.children().size();
+        return node == this.root && this.duplicates != null ? folders + 1 : folders;
+    }
+
+    @Override
+    public boolean isLeaf(Object node) {
+        return !(node instanceof PreviewNode) || this.levels.isEmpty();
+    }
+
+    @Override
+    public int getIndexOfChild(Object parent, Object child) {
+        if (!(parent instanceof PreviewNode node)) {
+            return -1;
+        }
+
+        if (child instanceof PreviewNode.FileLeaf leaf) {
+            return leaf.parent() == node ? leaf.index() : -1;
+        }
+        if (child == this.duplicates && node == this.root) {
+            return node.children().size();
+        }
+        if (child instanceof PreviewNode folder) {
+            return node.indexOf(folder.getName());
+        }
+        return -1;
+    }
+
+    @Override
+    public void valueForPathChanged(TreePath path, Object newValue) {
+    }
+
+    @Override
+    public void addTreeModelListener(TreeModelListener listener) {
+        this.listeners.add(TreeModelListener.class, listener);
+    }
+
+    @Override
+    public void removeTreeModelListener(TreeModelListener listener) {
+        this.listeners.remove(TreeModelListener.class, listener);
+    }
+
+    private void load(PreviewNode node) {
+        if (!node.startLoading(this.levels)) {
+            return;
+        }
+        this.loader.execute(() -> {
+            if (this.disposed) {
+                return;
+            }
+            PreviewNode.Loaded loaded;
+            try {
+                loaded = node.load(this.scope, this.levels);
+            } catch (RuntimeException e) {
+                logger.warn("Could not load preview folder {}", node.getDirectory(), e);
+                loaded = new PreviewNode.Loaded(List.of(), Map.of(), SortPlan.empty(node.getDirectory()));
+            }
+            PreviewNode.Loaded result = loaded;
+            this.publisher.execute(() -> {
+                node.install(result);
+                this.fireStructureChanged(node);
+            });
+        });
+    }
+
+    private void fireStructureChanged(PreviewNode node) {
+        Deque<Object> path = new ArrayDeque<>();
+        for (PreviewNode current = node; current != null; current = current.getParent()) {
+            path.addFirst(current);
+        }
+        TreeModelEvent event = new TreeModelEvent(this, new TreePath(path.toArray()));
+        for (TreeModelListener listener : this.listeners.getListeners(TreeModelListener.class)) {
+            listener.treeStructureChanged(event);
+        }
+    }
+
+    public record Scope(Path rootPath, Path targetRoot, MetadataStore store, ConflictPolicy policy) {
+    }
+}